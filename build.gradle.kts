@@ -1,6 +1,7 @@
 plugins {
     java
     id("io.freefair.lombok") version "5.3.0"
+    id("me.champeau.jmh") version "0.6.5"
 }
 
 group = "org.tribot"
@@ -18,4 +19,13 @@ dependencies {
 
     testImplementation("org.slf4j:slf4j-simple:1.7.36")
     testImplementation("junit:junit:4.13.2")
+
+    jmh("org.slf4j:slf4j-nop:1.7.36")
+}
+
+// Benchmarks for the request and event hot paths, run with ./gradlew jmh
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package org.tribot.automation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up event classes, done for every event a client pushes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AutomationEventTypeBenchmark {
+
+	private final String[] names = Arrays.stream(AutomationEventType.values())
+			.map(AutomationEventType::getName)
+			.toArray(String[]::new);
+	private final Class<?>[] classes = Arrays.stream(AutomationEventType.values())
+			.map(AutomationEventType::getAutomationEventClass)
+			.toArray(Class<?>[]::new);
+	private int next;
+
+	@Benchmark
+	public Class<?> getClassFor() {
+		next = (next + 1) % names.length;
+		return AutomationEventType.getClassFor(names[next]);
+	}
+
+	@Benchmark
+	@SuppressWarnings("unchecked")
+	public Object getByClass() {
+		next = (next + 1) % names.length;
+		return AutomationEventType.getByClass((Class<? extends AutomationEvent>) classes[next]);
+	}
+
+}
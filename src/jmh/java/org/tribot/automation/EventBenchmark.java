@@ -0,0 +1,64 @@
+package org.tribot.automation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event handling: fanning an event out to a client's listeners, and events pushed over a {@link LoopbackPeer} from
+ * decoding to the listeners. Listeners run on the calling thread, so only this library's work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EventBenchmark {
+
+	private static final String CLIENT_ID = "benchmark";
+	private static final int PUSHED_EVENTS = 100;
+	private static final String EVENT_FRAME = "{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\","
+	                                          + "\"params\":{\"eventType\":\"custom\",\"message\":\"benchmark\"}}";
+
+	@Param({ "1", "16", "256" })
+	private int listeners;
+
+	private final AtomicLong received = new AtomicLong();
+	private final CustomMessageEvent event = new CustomMessageEvent("benchmark");
+
+	private AutomationServerImpl server;
+	private LoopbackPeer peer;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = LoopbackPeer.startServer(AutomationServerImpl.builder().eventExecutor(Runnable::run));
+		peer = LoopbackPeer.connect(server, CLIENT_ID, Map.of());
+		for (int i = 0; i < listeners; i++) {
+			server.onEvent(CLIENT_ID, CustomMessageEvent.class, e -> received.incrementAndGet());
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		peer.closeBlocking();
+		server.close();
+	}
+
+	@Benchmark
+	public void sendEvent() {
+		server.sendEvent(CLIENT_ID, event);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PUSHED_EVENTS)
+	public void receiveEvents() {
+		final long target = received.get() + (long) PUSHED_EVENTS * listeners;
+		for (int i = 0; i < PUSHED_EVENTS; i++) {
+			peer.send(EVENT_FRAME);
+		}
+		while (received.get() < target) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stands in for a TRiBot client on a loopback connection, answering every request with a canned result for its
+ * method, so benchmarks measure this library and not a real client
+ */
+class LoopbackPeer extends WebSocketClient {
+
+	// Method -> json result
+	private final Map<String, String> results;
+
+	private LoopbackPeer(URI uri, Map<String, String> results) {
+		super(uri);
+		this.results = results;
+	}
+
+	static AutomationServerImpl startServer(AutomationServerImpl.AutomationServerImplBuilder builder)
+			throws IOException, AutomationException {
+		final int port;
+		try (final ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		return builder.port(port).build();
+	}
+
+	static LoopbackPeer connect(AutomationServerImpl server, String clientId, Map<String, String> results)
+			throws InterruptedException {
+		final URI uri = URI.create(server.getConnectionUrl(clientId, true, WireFormat.JSON));
+		// The server starts listening on its own thread, retry until it is up
+		for (int attempt = 0; attempt < 50; attempt++) {
+			final LoopbackPeer peer = new LoopbackPeer(uri, results);
+			if (peer.connectBlocking()) {
+				while (!server.isConnected(clientId)) {
+					Thread.sleep(1);
+				}
+				return peer;
+			}
+			Thread.sleep(100);
+		}
+		throw new IllegalStateException("Could not connect to the automation server at " + uri);
+	}
+
+	@Override
+	public void onMessage(String message) {
+		final JsonElement frame = JsonParser.parseString(message);
+		if (frame.isJsonArray()) {
+			final List<String> responses = new ArrayList<>();
+			frame.getAsJsonArray().forEach(request -> {
+				final String response = respond(request.getAsJsonObject());
+				if (response != null) {
+					responses.add(response);
+				}
+			});
+			if (!responses.isEmpty()) {
+				send("[" + String.join(",", responses) + "]");
+			}
+			return;
+		}
+		final String response = respond(frame.getAsJsonObject());
+		if (response != null) {
+			send(response);
+		}
+	}
+
+	// Null for notifications, which get no response
+	private String respond(JsonObject request) {
+		if (!request.has("id") || request.get("id").isJsonNull()) {
+			return null;
+		}
+		final String method = request.get("method").getAsString();
+		return "{\"jsonrpc\":\"2.0\",\"id\":" + request.get("id") + ",\"result\":"
+		       + results.getOrDefault(method, "null") + "}";
+	}
+
+	@Override
+	public void onOpen(ServerHandshake handshake) {
+	}
+
+	@Override
+	public void onClose(int code, String reason, boolean remote) {
+	}
+
+	@Override
+	public void onError(Exception ex) {
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.tribot.automation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Request round trips against a {@link LoopbackPeer}: request encoding and sending, response decoding and mapping the
+ * result to the public types
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RpcBenchmark {
+
+	private static final String CLIENT_ID = "benchmark";
+
+	private AutomationServerImpl server;
+	private LoopbackPeer peer;
+	private AsyncAutomationClient client;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = LoopbackPeer.startServer(AutomationServerImpl.builder());
+		peer = LoopbackPeer.connect(server, CLIENT_ID, Map.of(
+				"getWorld", "330",
+				"getAllStats", Arrays.stream(Skill.values())
+						.map(skill -> "\"" + skill.name() + "\":99")
+						.collect(Collectors.joining(",", "{", "}")),
+				// A full inventory
+				"getInventoryItems", IntStream.range(0, 28)
+						.mapToObj(slot -> "[" + (995 + slot) + "," + (slot + 1) + "]")
+						.collect(Collectors.joining(",", "[", "]"))));
+		client = server.getClient(CLIENT_ID).async();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		peer.closeBlocking();
+		server.close();
+	}
+
+	@Benchmark
+	public int getWorld() {
+		return client.getWorld().join();
+	}
+
+	@Benchmark
+	public Map<Skill, Integer> getAllSkillLevels() {
+		return client.getAllSkillLevels().join();
+	}
+
+	@Benchmark
+	public List<Item> getInventoryItems() {
+		return client.getInventoryItems().join();
+	}
+
+	@Benchmark
+	public BatchResult batch() throws AutomationException {
+		return server.getClient(CLIENT_ID)
+				.batch()
+				.world()
+				.skillLevels()
+				.inventory()
+				.execute();
+	}
+
+}
@@ -0,0 +1,197 @@
+package org.tribot.automation;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking view of an {@link AutomationClient}. Every call returns immediately with a future that is completed
+ * once the client responds. Futures are completed on the automation server's websocket thread, so dependent stages
+ * should be kept short or moved to another executor with the {@code *Async} variants of {@link CompletableFuture}.
+ * <p>
+ * Futures will complete exceptionally with an {@link AutomationException} if there is an issue sending the
+ * request, ex. client disconnected, or no response.
+ */
+public interface AsyncAutomationClient {
+
+    /**
+     * Gets the blocking view of this client
+     *
+     * @return the blocking automation client
+     */
+    AutomationClient sync();
+
+    /**
+     * Gets a view of this client where every request waits at most the given timeout for a response, instead of
+     * the default deadline of each request. When the deadline passes, the client is told to cancel the request.
+     *
+     * @param timeout the time to wait for each response
+     * @return a view of this client using the given timeout
+     */
+    AsyncAutomationClient withTimeout(Duration timeout);
+
+    /**
+     * Sends a message to the script
+     *
+     * @param message the message to send to the script
+     * @return a future completed once the client acknowledges the message
+     */
+    CompletableFuture<Void> sendScriptMessage(String message);
+
+    /**
+     * Sends a request to the script to handle
+     *
+     * @param request the request to send
+     * @param returnType the return type - the response from the script will be deserialized via json into this format
+     * @param <T> the return type
+     * @return a future completed with the response from the script
+     */
+    <T> CompletableFuture<T> sendScriptRequest(String request, Class<T> returnType);
+
+    /**
+     * Sends a start script request to the client
+     *
+     * @param startScriptRequest the start script request
+     * @return a future completed once the client acknowledges the request
+     */
+    CompletableFuture<Void> startScript(StartScriptRequest startScriptRequest);
+
+    /**
+     * Sends a stop script request to the client
+     *
+     * @return a future completed once the client acknowledges the request
+     */
+    CompletableFuture<Void> stopScript();
+
+    /**
+     * Sends a pause script request to the client
+     *
+     * @return a future completed once the client acknowledges the request
+     */
+    CompletableFuture<Void> pauseScript();
+
+    /**
+     * Sends a resume script request to the client
+     *
+     * @return a future completed once the client acknowledges the request
+     */
+    CompletableFuture<Void> resumeScript();
+
+    /**
+     * Gets the currently active script name
+     *
+     * @return a future completed with the script name, or null if no script is running
+     */
+    CompletableFuture<String> getScriptName();
+
+    /**
+     * Gets the login name of the client
+     *
+     * @return a future completed with the login name, or null if no login name
+     */
+    CompletableFuture<String> getLoginName();
+
+    /**
+     * Gets a screenshot of the game client
+     *
+     * @return a future completed with a screenshot of the game client
+     */
+    CompletableFuture<Image> getScreenshot();
+
+    /**
+     * Gets a screenshot of the game client, decoding it into the given image when possible. Reusing images from a
+     * pool avoids allocating a new raster for every screenshot.
+     *
+     * @param destination the image to decode into. It is only used if it matches the size and type of the
+     *                    screenshot, otherwise a new image is allocated.
+     * @return a future completed with the decoded screenshot, which is the destination if it was used
+     */
+    CompletableFuture<BufferedImage> getScreenshot(BufferedImage destination);
+
+    /**
+     * Gets a screenshot of the game client without decoding it
+     *
+     * @return a future completed with the encoded (png) screenshot, or null if there is no screenshot
+     */
+    CompletableFuture<byte[]> getScreenshotBytes();
+
+    /**
+     * Gets a screenshot of the game client without decoding it, copying the encoded (png) bytes into the given buffer
+     *
+     * @param destination the buffer to write the encoded screenshot to, starting at its position
+     * @return a future completed with the number of bytes written, or -1 if there is no screenshot. Completes
+     * exceptionally with an {@link AutomationException} if the buffer does not have enough space remaining.
+     */
+    CompletableFuture<Integer> getScreenshot(ByteBuffer destination);
+
+    /**
+     * Gets the account username
+     *
+     * @return a future completed with the account username, or null if not logged in yet
+     */
+    CompletableFuture<String> getUsername();
+
+    /**
+     * Gets the skill level of the specified skill
+     *
+     * @param skill the skill to get the level of
+     * @return a future completed with the skill level, or -1 if not logged in yet
+     */
+    CompletableFuture<Integer> getSkillLevel(Skill skill);
+
+    /**
+     * Gets all skill levels
+     *
+     * @return a future completed with all skill levels, or an empty map if not logged in yet
+     */
+    CompletableFuture<Map<Skill, Integer>> getAllSkillLevels();
+
+    /**
+     * Gets all inventory items
+     *
+     * @return a future completed with all inventory items (empty if not logged in yet)
+     */
+    CompletableFuture<List<Item>> getInventoryItems();
+
+    /**
+     * Gets the current in-game position of this client
+     *
+     * @return a future completed with the in-game position of this client, or null if not logged in yet
+     */
+    CompletableFuture<Tile> getTile();
+
+    /**
+     * Checks if this client is logged in
+     *
+     * @return a future completed with true if this client is logged in, false otherwise
+     */
+    CompletableFuture<Boolean> isLoggedIn();
+
+    /**
+     * Gets the current world of this client
+     *
+     * @return a future completed with the current world of this client
+     */
+    CompletableFuture<Integer> getWorld();
+
+    /**
+     * Gets the specified game setting value
+     *
+     * @param index the game setting index
+     * @return a future completed with the game setting at the specified index
+     */
+    CompletableFuture<Integer> getGameSetting(int index);
+
+    /**
+     * Gets the specified varbit value
+     *
+     * @param index the varbit index
+     * @return a future completed with the varbit at the specified index
+     */
+    CompletableFuture<Integer> getVarbit(int index);
+
+}
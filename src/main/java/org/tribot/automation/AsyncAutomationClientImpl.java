@@ -0,0 +1,453 @@
+package org.tribot.automation;
+
+import lombok.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+@EqualsAndHashCode(of = "id")
+@Getter(AccessLevel.PACKAGE)
+class AsyncAutomationClientImpl implements AsyncAutomationClient {
+
+	private static final int TAB_ID = -1;
+
+	// Default deadlines for requests the client answers straight from game state, and for screenshots which have
+	// to be captured and encoded first. Everything else uses the server's request timeout.
+	private static final Duration READ_TIMEOUT = Duration.ofMillis(1500);
+	private static final Duration SCREENSHOT_TIMEOUT = Duration.ofSeconds(30);
+
+	private final AutomationServerImpl automationServer;
+	private final String id;
+	// When set, requests are queued into this batch instead of being sent immediately
+	private final AutomationServerImpl.Batch batch;
+	// Reads already queued into the batch by cache key, ex. the login and script name share one tab info request
+	private final Map<String, CompletableFuture<?>> batchReads = new HashMap<>();
+	// When set, overrides the default deadline of every request
+	private final Duration timeout;
+
+	AsyncAutomationClientImpl(AutomationServerImpl automationServer, String id) {
+		this(automationServer, id, null, null);
+	}
+
+	AsyncAutomationClientImpl(AutomationServerImpl automationServer, String id, AutomationServerImpl.Batch batch,
+	                          Duration timeout) {
+		this.automationServer = automationServer;
+		this.id = id;
+		this.batch = batch;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public AutomationClient sync() {
+		return new AutomationClientImpl(automationServer, id, timeout);
+	}
+
+	@Override
+	public AsyncAutomationClient withTimeout(Duration timeout) {
+		return new AsyncAutomationClientImpl(automationServer, id, batch, timeout);
+	}
+
+	@Override
+	public CompletableFuture<Void> sendScriptMessage(String message) {
+		return this.<Void>request()
+			.method("sendScriptMessage")
+			.param(TAB_ID)
+			.param(message)
+			.build()
+			.execute();
+	}
+
+	@Override
+	public <T> CompletableFuture<T> sendScriptRequest(String request, Class<T> returnType) {
+		return this.<T>request()
+			.method("sendScriptRequest")
+			.returnType(returnType)
+			.param(request)
+			.build()
+			.execute();
+	}
+
+	@Override
+	public CompletableFuture<Void> startScript(StartScriptRequest startScriptRequest) {
+		return this.<Void>request()
+		    .method("startScript")
+		    .param(TAB_ID)
+		    .param(startScriptRequest.getPassword() != null ?
+		           Map.of("username", startScriptRequest.getUsername(), "password", startScriptRequest.getPassword()) :
+		           startScriptRequest.getUsername())
+		    .param(startScriptRequest.getScriptName())
+		    .param(startScriptRequest.getScriptArguments())
+		    .param(startScriptRequest.getBreakProfileName())
+		    .build()
+		    .execute()
+		    .whenComplete(this::invalidateState)
+		    .thenApply(v -> index(ClientIndex.Attribute.SCRIPT_NAME, startScriptRequest.getScriptName(), v));
+	}
+
+	@Override
+	public CompletableFuture<Void> stopScript() {
+		return this.<Void>request()
+			.method("stopScript")
+			.param(TAB_ID)
+			.build()
+			.execute()
+			.whenComplete(this::invalidateState)
+			.thenApply(v -> index(ClientIndex.Attribute.SCRIPT_NAME, null, v));
+	}
+
+	@Override
+	public CompletableFuture<Void> pauseScript() {
+		return this.<Void>request()
+			.method("pauseScript")
+			.param(TAB_ID)
+			.build()
+			.execute()
+			.whenComplete(this::invalidateState);
+	}
+
+	@Override
+	public CompletableFuture<Void> resumeScript() {
+		return this.<Void>request()
+			.method("unPauseScript")
+			.param(TAB_ID)
+			.build()
+			.execute()
+			.whenComplete(this::invalidateState);
+	}
+
+	@Override
+	public CompletableFuture<String> getScriptName() {
+		return getTabInfo()
+			.thenApply(tabInfo -> tabInfo == null ? null : tabInfo.script)
+			.thenApply(script -> index(ClientIndex.Attribute.SCRIPT_NAME, script, script));
+	}
+
+	@Override
+	public CompletableFuture<String> getLoginName() {
+		return getTabInfo().thenApply(tabInfo -> tabInfo == null ? null : tabInfo.username);
+	}
+
+	@Override
+	public CompletableFuture<Image> getScreenshot() {
+		return getScreenshot((BufferedImage) null).thenApply(Image.class::cast);
+	}
+
+	@Override
+	public CompletableFuture<BufferedImage> getScreenshot(BufferedImage destination) {
+		return getEncodedScreenshot()
+			.thenApply(encoded -> {
+				if (encoded == null) {
+					return null;
+				}
+				try {
+					return ScreenshotCodec.decode(encoded, destination);
+				}
+				catch (IOException e) {
+					throw new AutomationException(e);
+				}
+			});
+	}
+
+	@Override
+	public CompletableFuture<byte[]> getScreenshotBytes() {
+		return getEncodedScreenshot().thenApply(encoded -> encoded == null ? null : ScreenshotCodec.toByteArray(encoded));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getScreenshot(ByteBuffer destination) {
+		return getEncodedScreenshot()
+			.thenApply(encoded -> {
+				if (encoded == null) {
+					return -1;
+				}
+				if (encoded.remaining() > destination.remaining()) {
+					throw new AutomationException("Screenshot is " + encoded.remaining() + " bytes but the " +
+					                              "destination only has " + destination.remaining() + " remaining");
+				}
+				final int length = encoded.remaining();
+				destination.put(encoded.duplicate());
+				return length;
+			});
+	}
+
+	@Override
+	public CompletableFuture<String> getUsername() {
+		return cached("username", StateCacheSettings::getUsername, () -> this.<String>request()
+				.method("getUsername")
+				.param(TAB_ID)
+				.timeout(READ_TIMEOUT)
+				.returnType(String.class)
+				.build()
+				.execute())
+				.thenApply(username -> index(ClientIndex.Attribute.USERNAME, username, username));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getSkillLevel(Skill skill) {
+		return cached("skillLevel:" + skill.getName(), StateCacheSettings::getSkillLevels, () -> this.<Integer>request()
+				.method("getStat")
+				.param(TAB_ID)
+				.param(skill.getName())
+				.timeout(READ_TIMEOUT)
+				.returnType(Integer.class)
+				.defaultValue(1)
+				.build()
+				.execute());
+	}
+
+	@Override
+	public CompletableFuture<Map<Skill, Integer>> getAllSkillLevels() {
+		return cached("skillLevels", StateCacheSettings::getSkillLevels, () -> this.request()
+				.method("getAllStats")
+				.param(TAB_ID)
+				.timeout(READ_TIMEOUT)
+				.returnType(Map.class)
+				.returnTypeGenericType(String.class)
+				.returnTypeGenericType(Integer.class)
+				.defaultValue(Map.of())
+				.build()
+				.<Map<String, Integer>>executeUnchecked())
+				.thenApply(stats -> stats.entrySet()
+						.stream()
+						.collect(Collectors.toMap(e -> Skill.valueOf(e.getKey()), Map.Entry::getValue)));
+	}
+
+	@Override
+	public CompletableFuture<List<Item>> getInventoryItems() {
+		return cached("inventory", StateCacheSettings::getInventory, () -> this.request()
+				.method("getInventoryItems")
+				.param(TAB_ID)
+				.timeout(READ_TIMEOUT)
+				.returnType(List.class)
+				.returnTypeGenericType(int[].class)
+				.defaultValue(List.of())
+				.build()
+				.<List<int[]>>executeUnchecked())
+				.thenApply(items -> items.stream()
+						.map(i -> new Item(i[0], i[1]))
+						.collect(Collectors.toList()));
+	}
+
+	@Override
+	public CompletableFuture<Tile> getTile() {
+		return cached("tile", StateCacheSettings::getTile, () -> this.<int[]>request()
+				.method("getPosition")
+				.param(TAB_ID)
+				.timeout(READ_TIMEOUT)
+				.returnType(int[].class)
+				.build()
+				.execute())
+				.thenApply(position -> {
+					if (position == null || position[0] < 0 || position[1] < 0) {
+						return null;
+					}
+					return new Tile(position[0], position[1], position[2]);
+				});
+	}
+
+	@Override
+	public CompletableFuture<Boolean> isLoggedIn() {
+		return cached("loggedIn", StateCacheSettings::getLoggedIn, () -> this.<Boolean>request()
+				.method("isLoggedIn")
+				.param(TAB_ID)
+				.timeout(READ_TIMEOUT)
+				.returnType(Boolean.class)
+				.defaultValue(false)
+				.build()
+				.execute())
+				.thenApply(loggedIn -> index(ClientIndex.Attribute.LOGGED_IN, loggedIn, loggedIn));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getWorld() {
+		return cached("world", StateCacheSettings::getWorld, () -> this.<Integer>request()
+		           .method("getWorld")
+		           .param(TAB_ID)
+		           .timeout(READ_TIMEOUT)
+		           .returnType(Integer.class)
+		           .defaultValue(-1)
+		           .build()
+		           .execute())
+		           .thenApply(world -> index(ClientIndex.Attribute.WORLD, world > 0 ? world : null, world));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getGameSetting(int index) {
+		return cached("gameSetting:" + index, StateCacheSettings::getGameSettings, () -> this.<Integer>request()
+				.method("getGameSetting")
+				.param(TAB_ID)
+				.param(index)
+				.timeout(READ_TIMEOUT)
+				.returnType(Integer.class)
+				.defaultValue(-1)
+				.build()
+				.execute());
+	}
+
+	@Override
+	public CompletableFuture<Integer> getVarbit(int index) {
+		return cached("varbit:" + index, StateCacheSettings::getVarbits, () -> this.<Integer>request()
+				.method("getVarbit")
+				.param(TAB_ID)
+				.param(index)
+				.timeout(READ_TIMEOUT)
+				.returnType(Integer.class)
+				.defaultValue(-1)
+				.build()
+				.execute());
+	}
+
+	CompletableFuture<Void> killProcess() {
+		return this.<Void>request()
+				.method("killProcess")
+				.build()
+				.execute();
+	}
+
+	CompletableFuture<Void> startScreenshotStream(String streamId, int fps) {
+		return this.<Void>request()
+			.method("startScreenshotStream")
+			.param(TAB_ID)
+			.param(streamId)
+			.param(fps)
+			.build()
+			.execute();
+	}
+
+	CompletableFuture<Void> stopScreenshotStream(String streamId) {
+		return this.<Void>request()
+			.method("stopScreenshotStream")
+			.param(TAB_ID)
+			.param(streamId)
+			.build()
+			.execute();
+	}
+
+	CompletableFuture<int[][]> watch(String method, String watchId, int[] ids) {
+		// Responds with the current values, changes are pushed as events from then on
+		return this.<int[][]>request()
+			.method(method)
+			.param(TAB_ID)
+			.param(watchId)
+			.param(ids)
+			.returnType(int[][].class)
+			.build()
+			.execute();
+	}
+
+	CompletableFuture<Void> unwatch(String watchId) {
+		return this.<Void>request()
+			.method("unwatch")
+			.param(TAB_ID)
+			.param(watchId)
+			.build()
+			.execute();
+	}
+
+	private CompletableFuture<ByteBuffer> getEncodedScreenshot() {
+		// Sent as an attachment frame by clients that support it, otherwise as base64 in the json result
+		return this.<ByteBuffer>request()
+			.method("getScreenshot")
+			.param(TAB_ID)
+			.timeout(SCREENSHOT_TIMEOUT)
+			.returnType(ByteBuffer.class)
+			.build()
+			.execute();
+	}
+
+	private CompletableFuture<TabInfo> getTabInfo() {
+		return cached("tabInfo", StateCacheSettings::getScriptName, () -> this.<TabInfo>request()
+			.method("getTabInfo")
+			.param(TAB_ID)
+			.timeout(READ_TIMEOUT)
+			.returnType(TabInfo.class)
+			.build()
+			.execute());
+	}
+
+	private <T> CompletableFuture<T> cached(String key, Function<StateCacheSettings, Duration> ttl,
+	                                        Supplier<CompletableFuture<T>> request) {
+		// Batched reads always go to the client, they are already a single round trip
+		if (batch != null) {
+			@SuppressWarnings("unchecked")
+			final CompletableFuture<T> read = (CompletableFuture<T>) batchReads.computeIfAbsent(key, k -> request.get());
+			return read;
+		}
+		final ClientStateCache cache = automationServer.getStateCache(id);
+		if (cache == null) {
+			return request.get();
+		}
+		return cache.get(key, ttl.apply(cache.getSettings()), request);
+	}
+
+	// Records the last known state of the client for fleet lookups, returning the result unchanged
+	private <T> T index(ClientIndex.Attribute attribute, Object value, T result) {
+		automationServer.index(id, attribute, value);
+		return result;
+	}
+
+	private void invalidateState(Void result, Throwable error) {
+		// Script changes affect most of the client's state, whether or not the client acknowledged in time
+		automationServer.invalidateState(id);
+	}
+
+	private <R> Request.RequestBuilder<R> request() {
+		return Request.<R>builder()
+				.automationServer(automationServer)
+				.batch(batch)
+				.clientTimeout(timeout)
+				.clientId(id);
+	}
+
+	@Value
+	private static class TabInfo {
+		private final long id;
+		private final String username;
+		private final String script;
+	}
+
+	@Builder
+	private static class Request<R> {
+		private final String method;
+		@Singular
+		private final List<?> params;
+		private final Class<? extends R> returnType;
+		@Singular
+		private final List<Class<?>> returnTypeGenericTypes;
+		private final AutomationServerImpl automationServer;
+		private final AutomationServerImpl.Batch batch;
+		private final String clientId;
+		private final R defaultValue;
+		private final Duration timeout;
+		private final Duration clientTimeout;
+		public CompletableFuture<R> execute() {
+			final var automationRequest =
+					AutomationServerImpl.AutomationRequest.<R>builder()
+							.method(method)
+							.params(params)
+							.returnType(returnType)
+							.returnTypeGenericTypes(returnTypeGenericTypes)
+							.defaultValue(defaultValue)
+							.timeout(clientTimeout != null ? clientTimeout : timeout)
+							.build();
+			return batch != null
+					? batch.add(automationRequest)
+					: automationServer.sendAsync(clientId, automationRequest);
+		}
+		public <T> CompletableFuture<T> executeUnchecked() {
+			// Generic type returns need to be casted, such as Map<String, Integer>
+			return (CompletableFuture<T>) execute();
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.tribot.automation;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A binary frame carrying raw bytes for a request, such as an encoded screenshot, so large payloads don't have to
+ * be base64 encoded inside a json response. The server advertises support with the {@value #HEADER} handshake
+ * response header.
+ * <p>
+ * Layout: marker byte {@code 0xc1}, kind byte, id length byte, utf-8 id, then the payload until the end of the frame.
+ * {@code 0xc1} is never used by MessagePack, so attachments can share binary frames with that wire format.
+ */
+@Value
+class AttachmentFrame {
+
+	static final String HEADER = "X-Automation-Attachments";
+
+	static final byte MARKER = (byte) 0xc1;
+	// The payload is the result of the request with the given id
+	static final byte KIND_RESULT = 0;
+	// The payload is a frame of the screenshot stream with the given id, see ScreenshotFrameEvent
+	static final byte KIND_SCREENSHOT_FRAME = 1;
+
+	private final byte kind;
+	private final String id;
+	private final ByteBuffer payload;
+
+	static boolean isAttachment(ByteBuffer frame) {
+		return frame.remaining() > 0 && frame.get(frame.position()) == MARKER;
+	}
+
+	/**
+	 * Reads an attachment frame. The payload is a view of the frame's buffer, nothing is copied.
+	 *
+	 * @param frame the binary frame, starting with {@link #MARKER}
+	 * @return the attachment
+	 */
+	static AttachmentFrame read(ByteBuffer frame) {
+		final ByteBuffer in = frame.duplicate();
+		in.get(); // Marker
+		final byte kind = in.get();
+		final int idLength = in.get() & 0xff;
+		final byte[] id = new byte[idLength];
+		in.get(id);
+		return new AttachmentFrame(kind, new String(id, StandardCharsets.UTF_8), in.slice());
+	}
+
+	/**
+	 * Writes an attachment frame
+	 *
+	 * @param kind what the payload is, ex. {@link #KIND_RESULT}
+	 * @param id the request or stream id, at most 255 utf-8 bytes
+	 * @param payload the payload, its position is left unchanged
+	 * @return the frame, ready to be sent
+	 * @throws IllegalArgumentException if the id is too long for the length byte
+	 */
+	static ByteBuffer write(byte kind, String id, ByteBuffer payload) {
+		final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		if (idBytes.length > 0xff) {
+			throw new IllegalArgumentException("Attachment id is " + idBytes.length + " bytes, at most 255 fit: " + id);
+		}
+		final ByteBuffer frame = ByteBuffer.allocate(3 + idBytes.length + payload.remaining());
+		frame.put(MARKER)
+		     .put(kind)
+		     .put((byte) idBytes.length)
+		     .put(idBytes)
+		     .put(payload.duplicate());
+		return frame.flip();
+	}
+
+}
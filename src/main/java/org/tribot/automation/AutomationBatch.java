@@ -0,0 +1,103 @@
+package org.tribot.automation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects several automation client reads and sends them to the client as a single JSON-RPC batch, so reading the
+ * full state of a client costs one round trip. Obtained through {@link AutomationClient#batch()}.
+ * <p>
+ * A batch can only be executed once.
+ */
+public interface AutomationBatch {
+
+    /**
+     * Includes {@link AutomationClient#getUsername()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch username();
+
+    /**
+     * Includes {@link AutomationClient#getLoginName()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch loginName();
+
+    /**
+     * Includes {@link AutomationClient#getScriptName()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch scriptName();
+
+    /**
+     * Includes {@link AutomationClient#getWorld()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch world();
+
+    /**
+     * Includes {@link AutomationClient#getTile()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch tile();
+
+    /**
+     * Includes {@link AutomationClient#isLoggedIn()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch loggedIn();
+
+    /**
+     * Includes {@link AutomationClient#getAllSkillLevels()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch skillLevels();
+
+    /**
+     * Includes {@link AutomationClient#getInventoryItems()} in this batch
+     *
+     * @return this batch
+     */
+    AutomationBatch inventory();
+
+    /**
+     * Includes {@link AutomationClient#getGameSetting(int)} in this batch
+     *
+     * @param index the game setting index
+     * @return this batch
+     */
+    AutomationBatch gameSetting(int index);
+
+    /**
+     * Includes {@link AutomationClient#getVarbit(int)} in this batch
+     *
+     * @param index the varbit index
+     * @return this batch
+     */
+    AutomationBatch varbit(int index);
+
+    /**
+     * Sends the batch and waits for all of its results
+     *
+     * @return the batch results
+     * @throws AutomationException if there is an issue sending this batch, ex. client disconnected, or no response,
+     * or if any request in the batch fails
+     * @throws IllegalStateException if this batch was already executed
+     */
+    BatchResult execute() throws AutomationException;
+
+    /**
+     * Sends the batch without waiting for its results
+     *
+     * @return a future completed with the batch results once every request in the batch has a response
+     * @throws IllegalStateException if this batch was already executed
+     */
+    CompletableFuture<BatchResult> executeAsync();
+
+}
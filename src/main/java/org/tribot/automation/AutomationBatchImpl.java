@@ -0,0 +1,148 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+@Getter(AccessLevel.PACKAGE)
+class AutomationBatchImpl implements AutomationBatch {
+
+	@Getter(AccessLevel.NONE)
+	private final AutomationServerImpl automationServer;
+	@Getter(AccessLevel.NONE)
+	private final AutomationServerImpl.Batch batch;
+	// Requests are queued into the batch through the regular async client, so the result mapping is shared
+	@Getter(AccessLevel.NONE)
+	private final AsyncAutomationClientImpl client;
+	@Getter(AccessLevel.NONE)
+	private final List<CompletableFuture<?>> results = new ArrayList<>();
+	@Getter(AccessLevel.NONE)
+	private boolean executed;
+
+	private CompletableFuture<String> username;
+	private CompletableFuture<String> loginName;
+	private CompletableFuture<String> scriptName;
+	private CompletableFuture<Integer> world;
+	private CompletableFuture<Tile> tile;
+	private CompletableFuture<Boolean> loggedIn;
+	private CompletableFuture<Map<Skill, Integer>> skillLevels;
+	private CompletableFuture<List<Item>> inventory;
+	private final Map<Integer, CompletableFuture<Integer>> gameSettings = new HashMap<>();
+	private final Map<Integer, CompletableFuture<Integer>> varbits = new HashMap<>();
+
+	AutomationBatchImpl(AutomationServerImpl automationServer, String id) {
+		this.automationServer = automationServer;
+		this.batch = automationServer.batch(id);
+		this.client = new AsyncAutomationClientImpl(automationServer, id, batch, null);
+	}
+
+	@Override
+	public AutomationBatch username() {
+		if (username == null) {
+			username = add(client::getUsername);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch loginName() {
+		if (loginName == null) {
+			loginName = add(client::getLoginName);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch scriptName() {
+		if (scriptName == null) {
+			scriptName = add(client::getScriptName);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch world() {
+		if (world == null) {
+			world = add(client::getWorld);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch tile() {
+		if (tile == null) {
+			tile = add(client::getTile);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch loggedIn() {
+		if (loggedIn == null) {
+			loggedIn = add(client::isLoggedIn);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch skillLevels() {
+		if (skillLevels == null) {
+			skillLevels = add(client::getAllSkillLevels);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch inventory() {
+		if (inventory == null) {
+			inventory = add(client::getInventoryItems);
+		}
+		return this;
+	}
+
+	@Override
+	public AutomationBatch gameSetting(int index) {
+		gameSettings.computeIfAbsent(index, i -> add(() -> client.getGameSetting(i)));
+		return this;
+	}
+
+	@Override
+	public AutomationBatch varbit(int index) {
+		varbits.computeIfAbsent(index, i -> add(() -> client.getVarbit(i)));
+		return this;
+	}
+
+	@Override
+	public BatchResult execute() throws AutomationException {
+		return automationServer.await(executeAsync());
+	}
+
+	@Override
+	public CompletableFuture<BatchResult> executeAsync() {
+		checkNotExecuted();
+		executed = true;
+		batch.send();
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+				.thenApply(v -> new BatchResult(this));
+	}
+
+	private <T> CompletableFuture<T> add(Supplier<CompletableFuture<T>> request) {
+		checkNotExecuted();
+		final CompletableFuture<T> result = request.get();
+		results.add(result);
+		return result;
+	}
+
+	private void checkNotExecuted() {
+		if (executed) {
+			throw new IllegalStateException("Batch was already executed");
+		}
+	}
+
+}
@@ -1,7 +1,10 @@
 package org.tribot.automation;
 
+import java.time.Duration;
 import java.util.List;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -52,6 +55,14 @@ public interface AutomationClient extends AutoCloseable {
      */
     void onReconnect(Runnable runnable);
 
+    /**
+     * Sets a runnable to run when this client's process exits. This is only known for clients launched through a
+     * launcher agent, see {@link SshSettings#isLauncherAgent()}.
+     *
+     * @param runnable the runnable to run
+     */
+    void onProcessExit(Runnable runnable);
+
     /**
      * Sets a consumer to run when this client triggers a script message event
      *
@@ -67,6 +78,44 @@ public interface AutomationClient extends AutoCloseable {
      */
     void onScriptRequest(Function<String, Object> requestHandler);
 
+    /**
+     * Gets a non-blocking view of this client, where every request returns a future instead of waiting for the
+     * response
+     *
+     * @return the non-blocking automation client
+     */
+    AsyncAutomationClient async();
+
+    /**
+     * Creates a batch of reads to send to this client in a single round trip, ex.
+     * {@code client.batch().world().tile().inventory().execute()}
+     *
+     * @return a new, empty batch for this client
+     */
+    AutomationBatch batch();
+
+    /**
+     * Gets the hit and miss counts of this client's state cache. Always empty unless the automation server was
+     * built with {@link AutomationServer.AutomationServerBuilder#stateCache(StateCacheSettings)}.
+     *
+     * @return the state cache statistics
+     */
+    CacheStats getCacheStats();
+
+    /**
+     * Drops all cached state of this client, so the next reads go to the client
+     */
+    void invalidateCache();
+
+    /**
+     * Gets a view of this client where every request waits at most the given timeout for a response, instead of
+     * the default deadline of each request. When the deadline passes, the client is told to cancel the request.
+     *
+     * @param timeout the time to wait for each response
+     * @return a view of this client using the given timeout
+     */
+    AutomationClient withTimeout(Duration timeout);
+
     /**
      * Sends a message to the script
      *
@@ -140,6 +189,49 @@ public interface AutomationClient extends AutoCloseable {
      */
     Image getScreenshot() throws AutomationException;
 
+    /**
+     * Gets a screenshot of the game client, decoding it into the given image when possible. Reusing images from a
+     * pool avoids allocating a new raster for every screenshot.
+     *
+     * @param destination the image to decode into. It is only used if it matches the size and type of the
+     *                    screenshot, otherwise a new image is allocated.
+     * @return the decoded screenshot, which is the destination if it was used
+     * @throws AutomationException if there is an issue sending this request, ex. client disconnected, or no response
+     */
+    BufferedImage getScreenshot(BufferedImage destination) throws AutomationException;
+
+    /**
+     * Gets a screenshot of the game client without decoding it, ex. to forward it somewhere else
+     *
+     * @return the encoded (png) screenshot, or null if there is no screenshot
+     * @throws AutomationException if there is an issue sending this request, ex. client disconnected, or no response
+     */
+    byte[] getScreenshotBytes() throws AutomationException;
+
+    /**
+     * Gets a screenshot of the game client without decoding it, copying the encoded (png) bytes into the given buffer
+     *
+     * @param destination the buffer to write the encoded screenshot to, starting at its position
+     * @return the number of bytes written, or -1 if there is no screenshot
+     * @throws AutomationException if there is an issue sending this request, ex. client disconnected, or no
+     * response, or if the buffer does not have enough space remaining
+     */
+    int getScreenshot(ByteBuffer destination) throws AutomationException;
+
+    /**
+     * Opens a stream of screenshots pushed by the client over the existing connection. After the first frame, the
+     * client only sends the regions that changed. Frames are delivered at most at the given rate; if the consumer is
+     * slower, changes are merged into its next frame instead of being queued.
+     * <p>
+     * The consumer is called from a shared delivery thread and should not block for long.
+     *
+     * @param fps the maximum number of frames per second to deliver to the consumer
+     * @param consumer the consumer to run for every frame
+     * @return the subscription, close it to stop the stream
+     * @throws AutomationException if there is an issue starting the stream, ex. client disconnected, or no response
+     */
+    Subscription streamScreenshots(int fps, Consumer<ScreenshotFrame> consumer) throws AutomationException;
+
     /**
      * Gets the account username
      *
@@ -215,4 +307,31 @@ public interface AutomationClient extends AutoCloseable {
      */
     int getVarbit(int index) throws AutomationException;
 
+    /**
+     * Watches varbits for changes. Instead of being polled, the client pushes only the varbits that changed.
+     * The listener is first called with the current values, then with the (id, value) pairs that changed.
+     * <p>
+     * The listener is called in order with this client's other events, so a slow listener delays them.
+     *
+     * @param ids the varbit indexes to watch
+     * @param listener the listener to call with the changed values, by varbit index
+     * @return the subscription, close it to stop watching
+     * @throws AutomationException if there is an issue sending this request, ex. client disconnected, or no response
+     */
+    Subscription watchVarbits(int[] ids, Consumer<Map<Integer, Integer>> listener) throws AutomationException;
+
+    /**
+     * Watches game settings for changes. Instead of being polled, the client pushes only the game settings that
+     * changed. The listener is first called with the current values, then with the (index, value) pairs that
+     * changed.
+     * <p>
+     * The listener is called in order with this client's other events, so a slow listener delays them.
+     *
+     * @param indexes the game setting indexes to watch
+     * @param listener the listener to call with the changed values, by game setting index
+     * @return the subscription, close it to stop watching
+     * @throws AutomationException if there is an issue sending this request, ex. client disconnected, or no response
+     */
+    Subscription watchGameSettings(int[] indexes, Consumer<Map<Integer, Integer>> listener) throws AutomationException;
+
 }
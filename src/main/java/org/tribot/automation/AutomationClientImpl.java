@@ -2,26 +2,28 @@ package org.tribot.automation;
 
 import lombok.*;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.util.Base64;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 @EqualsAndHashCode(of = "id")
 @Getter(AccessLevel.PACKAGE)
 class AutomationClientImpl implements AutomationClient {
 
-	private static final int TAB_ID = -1;
-
 	private final AutomationServerImpl automationServer;
 	private final String id;
+	// When set, overrides the default deadline of every request
+	private final Duration timeout;
+
+	AutomationClientImpl(AutomationServerImpl automationServer, String id) {
+		this(automationServer, id, null);
+	}
 
 	@Override
 	public boolean isRunning() {
@@ -48,6 +50,11 @@ class AutomationClientImpl implements AutomationClient {
 		on(ClientReconnectedEvent.class, e -> runnable.run());
 	}
 
+	@Override
+	public void onProcessExit(Runnable runnable) {
+		on(ProcessExitEvent.class, e -> runnable.run());
+	}
+
 	@Override
 	public void onScriptMessage(Consumer<String> consumer) {
 		on(CustomMessageEvent.class, e -> consumer.accept(e.getMessage()));
@@ -65,234 +72,150 @@ class AutomationClientImpl implements AutomationClient {
 		});
 	}
 
+	@Override
+	public AsyncAutomationClientImpl async() {
+		return new AsyncAutomationClientImpl(automationServer, id, null, timeout);
+	}
+
+	@Override
+	public AutomationBatch batch() {
+		return new AutomationBatchImpl(automationServer, id);
+	}
+
+	@Override
+	public CacheStats getCacheStats() {
+		return automationServer.getCacheStats(id);
+	}
+
+	@Override
+	public void invalidateCache() {
+		automationServer.invalidateState(id);
+	}
+
+	@Override
+	public AutomationClient withTimeout(Duration timeout) {
+		return new AutomationClientImpl(automationServer, id, timeout);
+	}
+
 	@Override
 	public void sendScriptMessage(String message) throws AutomationException {
-		this.request()
-			.method("sendScriptMessage")
-			.param(TAB_ID)
-			.param(message)
-			.build()
-			.execute();
+		automationServer.await(async().sendScriptMessage(message));
 	}
 
 	@Override
 	public <T> T sendScriptRequest(String request, Class<T> returnType) throws AutomationException {
-		return this.<T>request()
-			.method("sendScriptRequest")
-			.returnType(returnType)
-			.param(request)
-			.build()
-			.execute();
+		return automationServer.await(async().sendScriptRequest(request, returnType));
 	}
 
 	@Override
 	public void startScript(StartScriptRequest startScriptRequest) throws AutomationException {
-		this.request()
-		    .method("startScript")
-		    .param(TAB_ID)
-		    .param(startScriptRequest.getPassword() != null ?
-		           Map.of("username", startScriptRequest.getUsername(), "password", startScriptRequest.getPassword()) :
-		           startScriptRequest.getUsername())
-		    .param(startScriptRequest.getScriptName())
-		    .param(startScriptRequest.getScriptArguments())
-		    .param(startScriptRequest.getBreakProfileName())
-		    .build()
-		    .execute();
+		automationServer.await(async().startScript(startScriptRequest));
 	}
 
 	@Override
 	public void stopScript() throws AutomationException {
-		this.request()
-			.method("stopScript")
-			.param(TAB_ID)
-			.build()
-			.execute();
+		automationServer.await(async().stopScript());
 	}
 
 	@Override
 	public void pauseScript() throws AutomationException {
-		this.request()
-			.method("pauseScript")
-			.param(TAB_ID)
-			.build()
-			.execute();
+		automationServer.await(async().pauseScript());
 	}
 
 	@Override
 	public void resumeScript() throws AutomationException {
-		this.request()
-			.method("unPauseScript")
-			.param(TAB_ID)
-			.build()
-			.execute();
+		automationServer.await(async().resumeScript());
 	}
 
 	@Override
 	public String getScriptName() throws AutomationException {
-		final TabInfo tabInfo = this.<TabInfo>request()
-			.method("getTabInfo")
-			.param(TAB_ID)
-			.returnType(TabInfo.class)
-			.build()
-			.execute();
-		if (tabInfo == null) {
-			return null;
-		}
-		return tabInfo.script;
+		return automationServer.await(async().getScriptName());
 	}
 
 	@Override
 	public String getLoginName() throws AutomationException {
-		final TabInfo tabInfo = this.<TabInfo>request()
-			.method("getTabInfo")
-			.param(TAB_ID)
-			.returnType(TabInfo.class)
-			.build()
-			.execute();
-		if (tabInfo == null) {
-			return null;
-		}
-		return tabInfo.username;
+		return automationServer.await(async().getLoginName());
 	}
 
 	@Override
 	public Image getScreenshot() throws AutomationException {
-		final String screenshotBase64 = this.<String>request()
-			.method("getScreenshot")
-			.param(TAB_ID)
-			.returnType(String.class)
-			.build()
-			.execute();
-		if (screenshotBase64 == null) {
-			return null;
-		}
-		final byte[] bytes = Base64.getDecoder().decode(screenshotBase64);
-		final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-		try {
-			return ImageIO.read(byteArrayInputStream);
-		}
-		catch (IOException e) {
-			throw new AutomationException(e);
-		}
+		return automationServer.await(async().getScreenshot());
+	}
+
+	@Override
+	public BufferedImage getScreenshot(BufferedImage destination) throws AutomationException {
+		return automationServer.await(async().getScreenshot(destination));
+	}
+
+	@Override
+	public byte[] getScreenshotBytes() throws AutomationException {
+		return automationServer.await(async().getScreenshotBytes());
+	}
+
+	@Override
+	public int getScreenshot(ByteBuffer destination) throws AutomationException {
+		return automationServer.await(async().getScreenshot(destination));
+	}
+
+	@Override
+	public Subscription streamScreenshots(int fps, Consumer<ScreenshotFrame> consumer) throws AutomationException {
+		return automationServer.streamScreenshots(id, fps, consumer);
 	}
 
 	@Override
 	public String getUsername() throws AutomationException {
-		return this.<String>request()
-				.method("getUsername")
-				.param(TAB_ID)
-				.returnType(String.class)
-				.build()
-				.execute();
+		return automationServer.await(async().getUsername());
 	}
 
 	@Override
 	public int getSkillLevel(Skill skill) throws AutomationException {
-		return this.<Integer>request()
-				.method("getStat")
-				.param(TAB_ID)
-				.param(skill.getName())
-				.returnType(Integer.class)
-				.defaultValue(1)
-				.build()
-				.execute();
+		return automationServer.await(async().getSkillLevel(skill));
 	}
 
 	@Override
 	public Map<Skill, Integer> getAllSkillLevels() throws AutomationException {
-		return this.request()
-				.method("getAllStats")
-				.param(TAB_ID)
-				.returnType(Map.class)
-				.returnTypeGenericType(String.class)
-				.returnTypeGenericType(Integer.class)
-				.defaultValue(Map.of())
-				.build()
-				.<Map<String, Integer>>executeUnchecked()
-				.entrySet()
-				.stream()
-				.collect(Collectors.toMap(e -> Skill.valueOf(e.getKey()), Map.Entry::getValue));
+		return automationServer.await(async().getAllSkillLevels());
 	}
 
 	@Override
 	public List<Item> getInventoryItems() throws AutomationException {
-		return this.request()
-				.method("getInventoryItems")
-				.param(TAB_ID)
-				.returnType(List.class)
-				.returnTypeGenericType(int[].class)
-				.defaultValue(List.of())
-				.build()
-				.<List<int[]>>executeUnchecked()
-				.stream()
-				.map(i -> new Item(i[0], i[1]))
-				.collect(Collectors.toList());
+		return automationServer.await(async().getInventoryItems());
 	}
 
 	@Override
 	public Tile getTile() throws AutomationException {
-		final int[] position = this.<int[]>request()
-				.method("getPosition")
-				.param(TAB_ID)
-				.returnType(int[].class)
-				.build()
-				.execute();
-		if (position == null || position[0] < 0 || position[1] < 0) {
-			return null;
-		}
-		return new Tile(position[0], position[1], position[2]);
+		return automationServer.await(async().getTile());
 	}
 
 	@Override
 	public boolean isLoggedIn() throws AutomationException {
-		return this.<Boolean>request()
-				.method("isLoggedIn")
-				.param(TAB_ID)
-				.returnType(Boolean.class)
-				.defaultValue(false)
-				.build()
-				.execute();
+		return automationServer.await(async().isLoggedIn());
 	}
 
 	@Override
 	public int getWorld() throws AutomationException {
-		return this.<Integer>request()
-		           .method("getWorld")
-		           .param(TAB_ID)
-		           .returnType(Integer.class)
-		           .defaultValue(-1)
-		           .build()
-		           .execute();
+		return automationServer.await(async().getWorld());
 	}
 
 	@Override
 	public int getGameSetting(int index) throws AutomationException {
-		return this.<Integer>request()
-				.method("getGameSetting")
-				.param(TAB_ID)
-				.param(index)
-				.returnType(Integer.class)
-				.defaultValue(-1)
-				.build()
-				.execute();
+		return automationServer.await(async().getGameSetting(index));
 	}
 
 	@Override
 	public int getVarbit(int index) throws AutomationException {
-		return this.<Integer>request()
-				.method("getVarbit")
-				.param(TAB_ID)
-				.param(index)
-				.returnType(Integer.class)
-				.defaultValue(-1)
-				.build()
-				.execute();
+		return automationServer.await(async().getVarbit(index));
+	}
+
+	@Override
+	public Subscription watchVarbits(int[] ids, Consumer<Map<Integer, Integer>> listener) throws AutomationException {
+		return automationServer.watch(id, StateWatcher.Kind.VARBITS, ids, listener);
 	}
 
-	private <R> Request.RequestBuilder<R> request() {
-		return Request.<R>builder()
-				.automationServer(automationServer)
-				.clientId(id);
+	@Override
+	public Subscription watchGameSettings(int[] indexes, Consumer<Map<Integer, Integer>> listener)
+			throws AutomationException {
+		return automationServer.watch(id, StateWatcher.Kind.GAME_SETTINGS, indexes, listener);
 	}
 
 	private <T extends AutomationEvent> void on(Class<T> eventClass, Consumer<T> onEvent) {
@@ -302,47 +225,9 @@ class AutomationClientImpl implements AutomationClient {
 	@Override
 	public void close() {
 		try {
-			request()
-					.method("killProcess")
-					.build()
-					.execute();
+			automationServer.await(async().killProcess());
 		}
 		catch (AutomationException ignored) { }
 	}
 
-	@Value
-	private static class TabInfo {
-		private final long id;
-		private final String username;
-		private final String script;
-	}
-
-	@Builder
-	private static class Request<R> {
-		private final String method;
-		@Singular
-		private final List<?> params;
-		private final Class<? extends R> returnType;
-		@Singular
-		private final List<Class<?>> returnTypeGenericTypes;
-		private final AutomationServerImpl automationServer;
-		private final String clientId;
-		private final R defaultValue;
-		public R execute() {
-			final var automationRequest =
-					AutomationServerImpl.AutomationRequest.<R>builder()
-							.method(method)
-							.params(params)
-							.returnType(returnType)
-							.returnTypeGenericTypes(returnTypeGenericTypes)
-							.defaultValue(defaultValue)
-							.build();
-			return automationServer.send(clientId, automationRequest);
-		}
-		public <T> T executeUnchecked() {
-			// Generic type returns need to be casted, such as Map<String, Integer>
-			return (T) execute();
-		}
-	}
-
 }
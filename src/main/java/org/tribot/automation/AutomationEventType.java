@@ -4,6 +4,10 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Getter
@@ -12,11 +16,21 @@ enum AutomationEventType {
     SCRIPT_END("scriptEnded", ScriptEndEvent.class),
     BAN("banned", BanEvent.class),
     CUSTOM("custom", CustomMessageEvent.class),
+    SCREENSHOT_FRAME("screenshotFrame", ScreenshotFrameEvent.class),
+    VARBITS_CHANGED("varbitsChanged", VarbitsChangedEvent.class),
+    GAME_SETTINGS_CHANGED("gameSettingsChanged", GameSettingsChangedEvent.class),
 
     CUSTOM_REQUEST("sendCustomRequest", CustomRequestEvent.class),
     DISCONNECTED("disconnected", ClientDisconnectedEvent.class),
-    RECONNECTED("reconnected", ClientReconnectedEvent.class)
+    RECONNECTED("reconnected", ClientReconnectedEvent.class),
+    PROCESS_EXITED("processExited", ProcessExitEvent.class)
     ;
+    private static final Map<String, AutomationEventType> BY_NAME = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(AutomationEventType::getName, Function.identity()));
+    // Looked up for every dispatched event
+    private static final Map<Class<?>, AutomationEventType> BY_CLASS = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(AutomationEventType::getAutomationEventClass, Function.identity()));
+
     private final String name;
     private final Class<? extends AutomationEvent> automationEventClass;
 
@@ -26,6 +40,36 @@ enum AutomationEventType {
             case DISCONNECTED:
             case RECONNECTED:
             case CUSTOM_REQUEST:
+            case PROCESS_EXITED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // If this event means cached client state may be stale. New event types invalidate by default.
+    public boolean isStateChange() {
+        switch (this) {
+            case CUSTOM:
+            case CUSTOM_REQUEST:
+            case SCREENSHOT_FRAME:
+            // Only the changed ids are invalidated, by the state watcher
+            case VARBITS_CHANGED:
+            case GAME_SETTINGS_CHANGED:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    // If this event may be dropped when the client's listeners can't keep up. Lifecycle events and script requests,
+    // which a script is waiting to have answered, are never dropped. Screenshot streams recover with a key frame.
+    public boolean isDroppable() {
+        switch (this) {
+            case CUSTOM:
+            case SCREENSHOT_FRAME:
+            case VARBITS_CHANGED:
+            case GAME_SETTINGS_CHANGED:
                 return true;
             default:
                 return false;
@@ -37,18 +81,19 @@ enum AutomationEventType {
     }
 
     public static AutomationEventType getByClass(Class<? extends AutomationEvent> automationEventClass) {
-        return Arrays.stream(values())
-                .filter(a -> a.automationEventClass == automationEventClass)
-                .findFirst()
-                .orElseThrow();
+        final AutomationEventType type = BY_CLASS.get(automationEventClass);
+        if (type == null) {
+            throw new NoSuchElementException("Unknown automation event class: " + automationEventClass);
+        }
+        return type;
     }
 
     public static Class<? extends AutomationEvent> getClassFor(String name) {
-        return Arrays.stream(values())
-                .filter(a -> a.name.equals(name))
-                .findFirst()
-                .map(AutomationEventType::getAutomationEventClass)
-                .orElseThrow();
+        final AutomationEventType type = BY_NAME.get(name);
+        if (type == null) {
+            throw new NoSuchElementException("Unknown automation event type: " + name);
+        }
+        return type.getAutomationEventClass();
     }
 
 }
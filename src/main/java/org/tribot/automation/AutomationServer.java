@@ -1,7 +1,12 @@
 package org.tribot.automation;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Represents an automation server for automation clients to connect to
@@ -15,6 +20,44 @@ public interface AutomationServer extends AutoCloseable {
      */
     Set<AutomationClient> getClients();
 
+    /**
+     * Gets the connected automation clients matching a filter, ex.
+     * {@code server.clientsWhere(ClientFilter.builder().world(330).scriptName("nRestocker").build())}
+     * <p>
+     * Clients are matched on their last known state, from reads (including cached and batched reads) and events.
+     * A client whose state hasn't been read since it connected, or since it reconnected, won't match on that state.
+     *
+     * @param filter the filter to match
+     * @return the matching connected clients
+     */
+    Set<AutomationClient> clientsWhere(ClientFilter filter);
+
+    /**
+     * Runs an operation on every connected client concurrently, ex. {@code server.broadcast(c -> c.stopScript())}.
+     * This returns immediately, results can be read as they arrive or waited for with {@link Broadcast#await()}.
+     *
+     * @param operation the operation to run on each client
+     * @param <T> the result type of the operation
+     * @return the running broadcast
+     */
+    default <T> Broadcast<T> broadcast(Function<AsyncAutomationClient, CompletableFuture<T>> operation) {
+        return broadcast(operation, ClientFilter.builder().build(), 0);
+    }
+
+    /**
+     * Runs an operation on the connected clients matching a filter concurrently, with at most the given number
+     * of operations in flight at once.
+     * This returns immediately, results can be read as they arrive or waited for with {@link Broadcast#await()}.
+     *
+     * @param operation the operation to run on each client
+     * @param filter the clients to run the operation on, see {@link #clientsWhere(ClientFilter)}
+     * @param parallelism the maximum number of clients to run the operation on at once, or 0 for no limit
+     * @param <T> the result type of the operation
+     * @return the running broadcast
+     */
+    <T> Broadcast<T> broadcast(Function<AsyncAutomationClient, CompletableFuture<T>> operation, ClientFilter filter,
+                               int parallelism);
+
     /**
      * Closes this server, disconnecting all clients and preventing new connections
      */
@@ -52,6 +95,76 @@ public interface AutomationServer extends AutoCloseable {
          */
         AutomationServerBuilder onConnect(Consumer<AutomationClient> consumer);
 
+        /**
+         * The default time to wait for a client to respond to a request, used by requests that do not have their
+         * own deadline. Cheap reads use a shorter deadline, and individual calls can override it through
+         * {@link AutomationClient#withTimeout(Duration)}.
+         * Defaults to 10 seconds.
+         *
+         * @param requestTimeout the default request timeout
+         * @return this builder
+         */
+        AutomationServerBuilder requestTimeout(Duration requestTimeout);
+
+        /**
+         * Enables caching of client state, so repeated reads within the configured time to live are answered
+         * without a round trip to the client.
+         * Defaults to disabled.
+         *
+         * @param stateCache the cache settings, see {@link StateCacheSettings#builder()}
+         * @return this builder
+         */
+        AutomationServerBuilder stateCache(StateCacheSettings stateCache);
+
+        /**
+         * The executor to run event listeners on, such as script request handlers. Each client's events are handled
+         * in order, one at a time, while different clients are handled in parallel. Listeners never run on the
+         * websocket thread, so a slow listener does not hold up responses.
+         * Defaults to virtual threads when available (Java 21+), otherwise a cached thread pool.
+         *
+         * @param eventExecutor the executor to run event listeners on
+         * @return this builder
+         */
+        AutomationServerBuilder eventExecutor(Executor eventExecutor);
+
+        /**
+         * The maximum number of events queued for a client whose listeners are still busy.
+         * Defaults to 1024.
+         *
+         * @param eventQueueCapacity the maximum number of queued events per client
+         * @return this builder
+         */
+        AutomationServerBuilder eventQueueCapacity(int eventQueueCapacity);
+
+        /**
+         * What to do when a client's event queue is full. Lifecycle events and script requests are never dropped.
+         * Defaults to {@link EventOverflowPolicy#DROP_OLDEST}.
+         *
+         * @param eventOverflowPolicy the overflow policy
+         * @return this builder
+         */
+        AutomationServerBuilder eventOverflowPolicy(EventOverflowPolicy eventOverflowPolicy);
+
+        /**
+         * Where to report request latencies, request counts, bytes sent and received and event dispatch lag, ex. an
+         * {@link InMemoryMetrics} to query them.
+         * Defaults to disabled.
+         *
+         * @param metricsSink the metrics sink
+         * @return this builder
+         */
+        AutomationServerBuilder metricsSink(MetricsSink metricsSink);
+
+        /**
+         * Appends every frame sent to and received from clients to this file, so the traffic can be replayed later
+         * with {@link TrafficReplay}. Recording adds a copy of every frame, so leave it off unless it's needed.
+         * Defaults to disabled.
+         *
+         * @param trafficRecording the file to append to, created if it doesn't exist
+         * @return this builder
+         */
+        AutomationServerBuilder trafficRecording(Path trafficRecording);
+
         /**
          * Builds and launches the automation server. Clients will be able to connect.
          *
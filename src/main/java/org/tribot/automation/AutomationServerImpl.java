@@ -3,26 +3,36 @@ package org.tribot.automation;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -30,13 +40,25 @@ class AutomationServerImpl implements AutomationServer {
 
 	private static final Gson gson = new Gson();
 
+	private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+	// Not part of JSON-RPC itself, this follows the LSP convention for cancelling an in-flight request
+	private static final String CANCEL_REQUEST_METHOD = "$/cancelRequest";
+
 	private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+	// Delivers screenshot stream frames to subscribers
+	private final ScheduledExecutorService streamScheduler =
+			Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
 
 	private final Server server;
 
 	private final Consumer<AutomationClient> onConnect;
 
 	private final Map<String, WebSocket> clientConnections;
+	// Canonical handles, kept until the client is cleaned up
+	private final Map<String, AutomationClientImpl> clients;
+	// Rebuilt when a client connects or disconnects, so reads don't allocate
+	private volatile Set<AutomationClient> connectedClients = Set.of();
+	private final ClientIndex clientIndex = new ClientIndex();
 	private final Map<String, Future<?>> cleanTasks;
 	// Client ID -> Event Class -> Event Listeners
 	private final Map<String, Map<Class<? extends AutomationEvent>, List<Consumer<? extends AutomationEvent>>>> eventListeners;
@@ -45,24 +67,63 @@ class AutomationServerImpl implements AutomationServer {
 
 	private final Map<String, CompletableFuture<Response>> pendingMessages;
 
+	private final EventDispatcher eventDispatcher;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final LauncherAgents launcherAgents = new LauncherAgents(this);
+
+	private final Map<String, ScreenshotStream> screenshotStreams;
+	private final Map<String, StateWatcher> stateWatchers;
+
+	// Null if state caching is disabled
+	private final StateCacheSettings stateCache;
+	private final Map<String, ClientStateCache> stateCaches;
+
 	@Getter(AccessLevel.PACKAGE)
 	private final int port;
 
+	private final Duration requestTimeout;
+
+	// Null if metrics are disabled
+	private final MetricsSink metrics;
+	// Null if traffic isn't recorded
+	private final TrafficRecorder recorder;
+
 	@lombok.Builder
-	AutomationServerImpl(int port, Consumer<AutomationClient> onConnect) throws AutomationException {
+	AutomationServerImpl(int port, Consumer<AutomationClient> onConnect, Duration requestTimeout,
+	                     StateCacheSettings stateCache, Executor eventExecutor, int eventQueueCapacity,
+	                     EventOverflowPolicy eventOverflowPolicy, MetricsSink metricsSink, Path trafficRecording)
+			throws AutomationException {
 		this.port = port;
+		this.metrics = metricsSink;
+		try {
+			this.recorder = trafficRecording != null ? new TrafficRecorder(trafficRecording) : null;
+		}
+		catch (IOException e) {
+			throw new AutomationException(e);
+		}
+		if (recorder != null) {
+			cleaner.scheduleWithFixedDelay(recorder::flush, 1, 1, TimeUnit.SECONDS);
+		}
+		this.requestTimeout = requestTimeout != null ? requestTimeout : DEFAULT_REQUEST_TIMEOUT;
+		this.stateCache = stateCache;
+		stateCaches = new ConcurrentHashMap<>();
+		eventDispatcher = new EventDispatcher(eventExecutor, eventQueueCapacity, eventOverflowPolicy);
 		clientConnections = new ConcurrentHashMap<>();
+		clients = new ConcurrentHashMap<>();
 		pendingMessages = new ConcurrentHashMap<>();
 		pendingConnections = new ConcurrentHashMap<>();
 		eventListeners = new ConcurrentHashMap<>();
 		cleanTasks = new ConcurrentHashMap<>();
+		screenshotStreams = new ConcurrentHashMap<>();
+		stateWatchers = new ConcurrentHashMap<>();
 		this.onConnect = onConnect;
 		try {
 			server = new Server(port);
 			server.start();
 			log.debug("Created automation server.");
-			log.debug("Listening for local connections at: {} and remote connections at {}",
-					getLocalConnectionUrl(), getRemoteConnectionUrl());
+			// The remote url needs a lookup of the public ip, which blocks and fails offline
+			log.debug("Listening for local connections at: {}", getLocalConnectionUrl());
 		}
 		catch (Exception e) {
 			throw new AutomationException(e);
@@ -71,12 +132,60 @@ class AutomationServerImpl implements AutomationServer {
 
 	@Override
 	public Set<AutomationClient> getClients() {
-		return clientConnections.keySet()
+		return connectedClients;
+	}
+
+	@Override
+	public Set<AutomationClient> clientsWhere(ClientFilter filter) {
+		final Map<ClientIndex.Attribute, Object> criteria = filter.getCriteria();
+		if (criteria.isEmpty()) {
+			return getClients();
+		}
+		return clientIndex.find(criteria)
 				.stream()
-				.map(id -> new AutomationClientImpl(this, id))
+				.filter(this::isConnected)
+				.map(this::getClient)
 				.collect(Collectors.toUnmodifiableSet());
 	}
 
+	@Override
+	public <T> Broadcast<T> broadcast(Function<AsyncAutomationClient, CompletableFuture<T>> operation,
+	                                  ClientFilter filter, int parallelism) {
+		return Broadcast.start(clientsWhere(filter), operation, parallelism);
+	}
+
+	AutomationClientImpl getClient(String id) {
+		return clients.computeIfAbsent(id, i -> new AutomationClientImpl(this, i));
+	}
+
+	void index(String clientId, ClientIndex.Attribute attribute, Object value) {
+		if (clients.containsKey(clientId)) {
+			clientIndex.update(clientId, attribute, value);
+		}
+	}
+
+	private synchronized void refreshConnectedClients() {
+		connectedClients = clientConnections.keySet()
+				.stream()
+				.map(this::getClient)
+				.collect(Collectors.toUnmodifiableSet());
+	}
+
+	private void updateIndex(String id, AutomationEvent automationEvent) {
+		if (automationEvent instanceof ClientDisconnectedEvent || automationEvent instanceof ClientReconnectedEvent) {
+			// Anything but the account may have changed while it was away
+			clientIndex.update(id, ClientIndex.Attribute.SCRIPT_NAME, null);
+			clientIndex.update(id, ClientIndex.Attribute.WORLD, null);
+			clientIndex.update(id, ClientIndex.Attribute.LOGGED_IN, null);
+		}
+		else if (automationEvent instanceof ScriptEndEvent) {
+			clientIndex.update(id, ClientIndex.Attribute.SCRIPT_NAME, null);
+		}
+		else if (automationEvent instanceof BanEvent) {
+			clientIndex.update(id, ClientIndex.Attribute.LOGGED_IN, false);
+		}
+	}
+
 	String getLocalConnectionUrl() {
 		return "ws://127.0.0.1:" + getPort() + "/{id}";
 	}
@@ -105,8 +214,11 @@ class AutomationServerImpl implements AutomationServer {
 		return clientConnections.containsKey(id);
 	}
 
-	String getConnectionUrl(String clientId, boolean local) {
+	String getConnectionUrl(String clientId, boolean local, WireFormat format) {
 		final String url = local ? getLocalConnectionUrl() : getRemoteConnectionUrl();
+		if (format != WireFormat.JSON) {
+			return url.replace("{id}", clientId) + "?" + WireFormat.QUERY_PARAMETER + "=" + format.getName();
+		}
 		return url.replace("{id}", clientId);
 	}
 
@@ -125,6 +237,11 @@ class AutomationServerImpl implements AutomationServer {
 	}
 
 	<T extends AutomationEvent> void sendEvent(String id, T automationEvent) {
+		final AutomationEventType type = AutomationEventType.getByClass(automationEvent.getClass());
+		if (type.isStateChange()) {
+			invalidateState(id);
+			updateIndex(id, automationEvent);
+		}
 		final var connectionEventListeners = eventListeners.get(id);
 		if (connectionEventListeners == null) {
 			return;
@@ -133,24 +250,82 @@ class AutomationServerImpl implements AutomationServer {
 		if (eventListeners == null) {
 			return;
 		}
-		eventListeners.forEach(listener -> {
-			// Raw type on purpose, let the generics compile...
-			try {
-				((Consumer) listener).accept(automationEvent);
-			}
-			catch (Exception e) {
-				log.error("Exception while processing event listener", e);
+		final long receivedAt = System.nanoTime();
+		// Never run listeners on the websocket thread, a slow listener would hold up responses
+		eventDispatcher.dispatch(id, type.isDroppable(), () -> {
+			if (metrics != null) {
+				metrics.onEventDispatched(id, Duration.ofNanos(System.nanoTime() - receivedAt));
 			}
+			eventListeners.forEach(listener -> {
+				// Raw type on purpose, let the generics compile...
+				try {
+					((Consumer) listener).accept(automationEvent);
+				}
+				catch (Exception e) {
+					log.error("Exception while processing event listener", e);
+				}
+			});
 		});
 	}
 
+	// Null if state caching is disabled
+	ClientStateCache getStateCache(String clientId) {
+		if (stateCache == null || !isConnected(clientId)) {
+			return null;
+		}
+		return stateCaches.computeIfAbsent(clientId, id -> new ClientStateCache(stateCache));
+	}
+
+	CacheStats getCacheStats(String clientId) {
+		final ClientStateCache cache = stateCaches.get(clientId);
+		return cache == null ? CacheStats.EMPTY : cache.getStats();
+	}
+
+	void invalidateState(String clientId) {
+		final ClientStateCache cache = stateCaches.get(clientId);
+		if (cache != null) {
+			cache.invalidate();
+		}
+	}
+
+	void invalidateState(String clientId, String key) {
+		final ClientStateCache cache = stateCaches.get(clientId);
+		if (cache != null) {
+			cache.invalidate(key);
+		}
+	}
+
+	Subscription streamScreenshots(String clientId, int fps, Consumer<ScreenshotFrame> consumer) {
+		return screenshotStreams.computeIfAbsent(clientId, id -> new ScreenshotStream(this, id, streamScheduler))
+				.subscribe(fps, consumer);
+	}
+
+	Subscription watch(String clientId, StateWatcher.Kind kind, int[] ids, Consumer<Map<Integer, Integer>> listener) {
+		return stateWatchers.computeIfAbsent(clientId, id -> new StateWatcher(this, id)).watch(kind, ids, listener);
+	}
+
 	void clean(String id) {
 		if (clientConnections.containsKey(id)) {
 			return;
 		}
+		final ScreenshotStream screenshotStream = screenshotStreams.remove(id);
+		if (screenshotStream != null) {
+			screenshotStream.close();
+		}
+		final StateWatcher stateWatcher = stateWatchers.remove(id);
+		if (stateWatcher != null) {
+			stateWatcher.close();
+		}
 		eventListeners.remove(id);
+		eventDispatcher.remove(id);
+		clients.remove(id);
+		clientIndex.remove(id);
+		stateCaches.remove(id);
 		pendingConnections.remove(id);
 		cleanTasks.remove(id);
+		if (metrics != null) {
+			metrics.onClientRemoved(id);
+		}
 	}
 
 	void sendResponse(String clientId, String messageId, Object response) {
@@ -158,9 +333,8 @@ class AutomationServerImpl implements AutomationServer {
 		if (context == null) {
 			return;
 		}
-		final Response res = new Response(messageId, gson.toJsonTree(response), null);
-		final String text = gson.toJson(res);
-		context.send(text);
+		final Response res = new Response(messageId, gson.toJsonTree(response), null, null);
+		recordSent(clientId, null, write(context, res));
 	}
 
 	void sendResponse(String clientId, String messageId, Throwable response) {
@@ -171,62 +345,206 @@ class AutomationServerImpl implements AutomationServer {
 		final JsonObject jsonObject = new JsonObject();
 		jsonObject.addProperty("message", response.getMessage());
 		final RpcError error = new RpcError(500, "Exception while processing even handler", jsonObject);
-		final Response res = new Response(messageId, null, error);
-		final String text = gson.toJson(res);
-		context.send(text);
+		final Response res = new Response(messageId, null, error, null);
+		recordSent(clientId, null, write(context, res));
 	}
 
-	<R> R send(String clientId, AutomationRequest<R> automationRequest) {
+	<R> CompletableFuture<R> sendAsync(String clientId, AutomationRequest<R> automationRequest) {
 		log.debug("Attempting to send automation request for client (clientId={}): {}", clientId, automationRequest);
-		String messageId = null;
+		final WebSocket context = clientConnections.get(clientId);
+		if (context == null) {
+			return CompletableFuture.failedFuture(new AutomationException("Client not connected"));
+		}
+		final Request message = toRequest(automationRequest);
+		// Register before writing, a local client can respond before send returns
+		final CompletableFuture<R> result = registerPending(clientId, message, automationRequest);
 		try {
-			final WebSocket context = clientConnections.get(clientId);
-			if (context == null) {
-				throw new AutomationException("Client not connected");
-			}
-			final JsonElement params = automationRequest.getParams().isEmpty()
-					? null
-					: gson.toJsonTree(automationRequest.getParams());
-			final Request message = Request.builder()
-			                               .method(automationRequest.getMethod())
-			                               .params(params)
-			                               .build();
-			messageId = message.getId();
-			final String body = gson.toJson(message);
-			context.send(body);
-			final CompletableFuture<Response> completableFuture = new CompletableFuture<>();
-			pendingMessages.put(message.getId(), completableFuture);
-			final Response response = completableFuture.get(10, TimeUnit.SECONDS);
-            log.debug("Received automation response: {}", response);
-			if (response.error != null) {
-				throw new AutomationException(response.error.toString());
-			}
-			Type returnType = automationRequest.returnType;
-			if (returnType == null) {
-				// Not expecting any return value
-				return null;
-			}
-			if (!automationRequest.returnTypeGenericTypes.isEmpty()) {
-				returnType = TypeToken.getParameterized(returnType,
-						automationRequest.returnTypeGenericTypes.toArray(new Type[0]))
-						.getType();
+			recordSent(clientId, message.getMethod(), write(context, message));
+		}
+		catch (Exception e) {
+			fail(message, e);
+		}
+		return result;
+	}
+
+	// Returns the size of the written frame
+	private long write(WebSocket context, Object message) {
+		final ConnectionContext connection = context.getAttachment();
+		if (connection != null && connection.getFormat() == WireFormat.MESSAGE_PACK) {
+			final byte[] frame = MessagePack.encode(gson.toJsonTree(message));
+			if (recorder != null) {
+				recorder.outbound(connection.getId(), frame);
 			}
-			try {
-				return gson.fromJson(response.result, returnType);
+			context.send(frame);
+			return frame.length;
+		}
+		final String frame = gson.toJson(message);
+		if (recorder != null && connection != null) {
+			recorder.outbound(connection.getId(), frame);
+		}
+		context.send(frame);
+		// Only worth counting the encoded size if someone is listening
+		return metrics != null ? getUtf8Length(frame) : frame.length();
+	}
+
+	private void recordSent(String clientId, String method, long bytes) {
+		if (metrics != null) {
+			metrics.onBytesSent(clientId, method, bytes);
+		}
+	}
+
+	private void recordReceived(String clientId, long bytes) {
+		if (metrics != null) {
+			metrics.onBytesReceived(clientId, bytes);
+		}
+	}
+
+	private static long getUtf8Length(String s) {
+		long length = s.length();
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c >= 0x80) {
+				// Surrogate pairs are 4 bytes for 2 chars
+				length += c >= 0x800 && !Character.isSurrogate(c) ? 2 : 1;
 			}
-			catch (Exception e) {
-				// This can happen if there is no tab open
-				log.trace("Failed to parse result, using default value", e);
-				return automationRequest.defaultValue;
+		}
+		return length;
+	}
+
+	private static RequestOutcome getOutcome(Response response, Throwable e) {
+		if (e instanceof TimeoutException) {
+			return RequestOutcome.TIMEOUT;
+		}
+		return e != null || response.error != null ? RequestOutcome.ERROR : RequestOutcome.SUCCESS;
+	}
+
+	Batch batch(String clientId) {
+		return new Batch(clientId);
+	}
+
+	private Request toRequest(AutomationRequest<?> automationRequest) {
+		final JsonElement params = automationRequest.getParams().isEmpty()
+				? null
+				: gson.toJsonTree(automationRequest.getParams());
+		return Request.builder()
+		              .method(automationRequest.getMethod())
+		              .params(params)
+		              .build();
+	}
+
+	private <R> CompletableFuture<R> registerPending(String clientId, Request message,
+	                                                 AutomationRequest<R> automationRequest) {
+		final Duration timeout = automationRequest.getTimeout() != null
+				? automationRequest.getTimeout()
+				: requestTimeout;
+		final CompletableFuture<Response> completableFuture = new CompletableFuture<>();
+		if (pendingMessages.putIfAbsent(message.getId(), completableFuture) != null) {
+			return CompletableFuture.failedFuture(new AutomationException("Duplicate request id " + message.getId()));
+		}
+		final long sentAt = System.nanoTime();
+		if (metrics != null) {
+			metrics.onRequestSent(clientId, message.getMethod());
+		}
+		return completableFuture
+				.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((response, e) -> {
+					if (metrics != null) {
+						metrics.onRequestCompleted(clientId, message.getMethod(),
+								Duration.ofNanos(System.nanoTime() - sentAt), getOutcome(response, e));
+					}
+					// Only the caller that removes the entry sends the cancel, a late response has already won
+					if (pendingMessages.remove(message.getId()) != null && e instanceof TimeoutException) {
+						log.debug("Automation request {} ({}) timed out after {}", message.getId(),
+								message.getMethod(), timeout);
+						cancel(clientId, message.getId());
+					}
+				})
+				.thenApply(response -> mapResponse(automationRequest, response));
+	}
+
+	private void cancel(String clientId, String messageId) {
+		final WebSocket context = clientConnections.get(clientId);
+		if (context == null) {
+			return;
+		}
+		final JsonObject params = new JsonObject();
+		params.addProperty("id", messageId);
+		final Request notification = Request.builder()
+		                                    .id(null)
+		                                    .method(CANCEL_REQUEST_METHOD)
+		                                    .params(params)
+		                                    .build();
+		try {
+			recordSent(clientId, null, write(context, notification));
+		}
+		catch (Exception e) {
+			log.debug("Failed to send cancel notification for {}", messageId, e);
+		}
+	}
+
+	private void fail(Request message, Exception e) {
+		final CompletableFuture<Response> pending = pendingMessages.remove(message.getId());
+		if (pending != null) {
+			pending.completeExceptionally(new AutomationException(e));
+		}
+	}
+
+	<R> R await(CompletableFuture<R> future) throws AutomationException {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof AutomationException) {
+				throw (AutomationException) e.getCause();
 			}
+			throw new AutomationException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			// Callers further up still need to see the interrupt
+			Thread.currentThread().interrupt();
+			throw new AutomationException(e);
 		}
 		catch (Exception e) {
 			throw new AutomationException(e);
 		}
-		finally {
-			if (messageId != null) {
-				pendingMessages.remove(messageId);
-			}
+	}
+
+	private ByteBuffer getBinaryResult(Response response) {
+		if (response.attachment != null) {
+			return response.attachment;
+		}
+		if (response.result == null || !response.result.isJsonPrimitive()) {
+			return null;
+		}
+		// Clients without attachment support send binary results as base64 strings
+		return ByteBuffer.wrap(Base64.getDecoder().decode(response.result.getAsString()));
+	}
+
+	private <R> R mapResponse(AutomationRequest<R> automationRequest, Response response) {
+		log.debug("Received automation response: {}", response);
+		if (response.error != null) {
+			throw new AutomationException(response.error.toString());
+		}
+		Type returnType = automationRequest.returnType;
+		if (returnType == null) {
+			// Not expecting any return value
+			return null;
+		}
+		if (returnType == ByteBuffer.class) {
+			return (R) getBinaryResult(response);
+		}
+		if (!automationRequest.returnTypeGenericTypes.isEmpty()) {
+			returnType = TypeToken.getParameterized(returnType,
+					automationRequest.returnTypeGenericTypes.toArray(new Type[0]))
+					.getType();
+		}
+		try {
+			return gson.fromJson(response.result, returnType);
+		}
+		catch (Exception e) {
+			// This can happen if there is no tab open
+			log.trace("Failed to parse result, using default value", e);
+			return automationRequest.defaultValue;
 		}
 	}
 
@@ -235,6 +553,12 @@ class AutomationServerImpl implements AutomationServer {
 		try {
 			server.stop();
 			cleaner.shutdown();
+			streamScheduler.shutdown();
+			eventDispatcher.close();
+			launcherAgents.close();
+			if (recorder != null) {
+				recorder.close();
+			}
 		}
 		catch (InterruptedException e) {
 			throw new AutomationException(e);
@@ -246,28 +570,60 @@ class AutomationServerImpl implements AutomationServer {
 			super(new InetSocketAddress(port));
 		}
 		@Override
+		public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+		                                                                   ClientHandshake request)
+				throws InvalidDataException {
+			final ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+			final String id = parseId(request.getResourceDescriptor());
+			if (LauncherAgents.isAgent(id)
+			    && !launcherAgents.accept(id, request.getFieldValue(LauncherAgent.TOKEN_HEADER))) {
+				throw new InvalidDataException(CloseFrame.POLICY_VALIDATION, "Unknown launcher agent");
+			}
+			// Let the client know what it can use on this connection
+			response.put(WireFormat.HEADER, WireFormat.negotiate(request).getName());
+			response.put(AttachmentFrame.HEADER, "true");
+			return response;
+		}
+		@Override
 		public void onOpen(WebSocket conn, ClientHandshake handshake) {
+			conn.setAttachment(new ConnectionContext(parseId(conn), WireFormat.negotiate(handshake)));
 			final String id = getId(conn);
+			if (LauncherAgents.isAgent(id)) {
+				launcherAgents.onOpen(id, conn);
+				return;
+			}
 			if (clientConnections.containsKey(id)) {
 				log.error("Duplicate connection requested for id {}", id);
 				conn.close();
 				return;
 			}
-			log.debug("Connection opened: {}", id);
+			log.debug("Connection opened: {} ({})", id, conn.<ConnectionContext>getAttachment().getFormat());
+			if (recorder != null) {
+				recorder.open(id, conn.<ConnectionContext>getAttachment().getFormat());
+			}
 			clientConnections.put(id, conn);
+			refreshConnectedClients();
 			final WaitForConnectionContext waitForConnectionContext = pendingConnections.get(id);
 			if (waitForConnectionContext != null) {
-				waitForConnectionContext.getCountdownLatch().countDown();
+				waitForConnectionContext.getConnection().complete(null);
 			}
 			final Future<?> cleanTask = cleanTasks.remove(id);
 			if (cleanTask != null) {
 				// Was previously connected
 				cleanTask.cancel(false);
+				final ScreenshotStream screenshotStream = screenshotStreams.get(id);
+				if (screenshotStream != null) {
+					screenshotStream.restart();
+				}
+				final StateWatcher stateWatcher = stateWatchers.get(id);
+				if (stateWatcher != null) {
+					stateWatcher.restart();
+				}
 				sendEvent(id, new ClientReconnectedEvent());
 			}
 			else {
 				if (onConnect != null) {
-					final AutomationClient client = new AutomationClientImpl(AutomationServerImpl.this, id);
+					final AutomationClient client = getClient(id);
 					try {
 						onConnect.accept(client);
 					}
@@ -280,8 +636,16 @@ class AutomationServerImpl implements AutomationServer {
 		@Override
 		public void onClose(WebSocket conn, int code, String reason, boolean remote) {
 			final String id = getId(conn);
+			if (LauncherAgents.isAgent(id)) {
+				launcherAgents.onClose(id, conn);
+				return;
+			}
 			clientConnections.remove(id);
+			refreshConnectedClients();
 			log.debug("Connection closed: {}", id);
+			if (recorder != null) {
+				recorder.close(id);
+			}
 			// Let's hold onto the client data in case it reconnects
 			final Future<?> cleanTask = cleaner.schedule(() -> clean(id), 30, TimeUnit.MINUTES);
 			cleanTasks.put(id, cleanTask);
@@ -290,30 +654,79 @@ class AutomationServerImpl implements AutomationServer {
 		@Override
 		public void onMessage(WebSocket conn, String message) {
 			final String id = getId(conn);
-			log.debug("Received message from {}: {}", id, message);
-			final JsonElement element = JsonParser.parseString(message);
-			if (!element.isJsonObject()) {
+			try {
+				if (LauncherAgents.isAgent(id)) {
+					launcherAgents.onMessage(id, message);
+					return;
+				}
+				if (metrics != null) {
+					recordReceived(id, getUtf8Length(message));
+				}
+				if (recorder != null) {
+					recorder.inbound(id, message);
+				}
+				log.debug("Received message from {}: {}", id, message);
+				RpcMessageReader.read(message, pendingMessages::containsKey, m -> onMessage(id, m));
+			}
+			catch (Exception e) {
+				log.warn("Failed to process message from {}", id, e);
+			}
+		}
+		@Override
+		public void onMessage(WebSocket conn, ByteBuffer message) {
+			final String id = getId(conn);
+			log.debug("Received binary message from {}: {} bytes", id, message.remaining());
+			recordReceived(id, message.remaining());
+			if (recorder != null) {
+				recorder.inbound(id, message);
+			}
+			try {
+				if (AttachmentFrame.isAttachment(message)) {
+					onAttachment(id, AttachmentFrame.read(message));
+				}
+				else {
+					RpcMessageReader.read(MessagePack.decode(message), m -> onMessage(id, m));
+				}
+			}
+			catch (Exception e) {
+				log.warn("Failed to process binary message from {}", id, e);
+			}
+		}
+		private void onAttachment(String id, AttachmentFrame attachment) {
+			if (attachment.getKind() == AttachmentFrame.KIND_SCREENSHOT_FRAME) {
+				sendEvent(id, ScreenshotFrameEvent.read(attachment.getId(), attachment.getPayload()));
+				return;
+			}
+			if (attachment.getKind() != AttachmentFrame.KIND_RESULT) {
+				log.debug("Ignoring attachment of unknown kind {}", attachment.getKind());
 				return;
 			}
-			if (element.getAsJsonObject().has("method")) {
-				final Request request = gson.fromJson(message, Request.class);
-				if ("onEvent".equals(request.getMethod())) {
-					final String type = request.params.getAsJsonObject().get("eventType").getAsString();
+			final CompletableFuture<Response> responseCompletableFuture = pendingMessages.remove(attachment.getId());
+			if (responseCompletableFuture != null) {
+				responseCompletableFuture.complete(new Response(attachment.getId(), null, null, attachment.getPayload()));
+			}
+		}
+		private void onMessage(String id, RpcMessage message) {
+			if (message.isRequest()) {
+				if ("onEvent".equals(message.getMethod())) {
+					final String type = message.getParams().getAsJsonObject().get("eventType").getAsString();
 					final var klass = AutomationEventType.getClassFor(type);
-					final var event = gson.fromJson(request.getParams(), klass);
+					final var event = gson.fromJson(message.getParams(), klass);
 					sendEvent(id, event);
 				}
-				else if (AutomationEventType.CUSTOM_REQUEST.getName().equals(request.getMethod())) {
-					final String body = request.getParams().getAsJsonArray().get(0).getAsString();
-					final var event = new CustomRequestEvent(body, request.getId());
+				else if (AutomationEventType.CUSTOM_REQUEST.getName().equals(message.getMethod())) {
+					final String body = message.getParams().getAsJsonArray().get(0).getAsString();
+					final var event = new CustomRequestEvent(body, message.getId());
 					sendEvent(id, event);
 				}
 			}
-			else {
-				final Response response = gson.fromJson(message, Response.class);
-				final CompletableFuture<Response> responseCompletableFuture = pendingMessages.remove(response.getId());
+			else if (message.getId() != null) {
+				final CompletableFuture<Response> responseCompletableFuture = pendingMessages.remove(message.getId());
 				if (responseCompletableFuture != null) {
-					responseCompletableFuture.complete(response);
+					final RpcError error = message.getError() != null
+							? gson.fromJson(message.getError(), RpcError.class)
+							: null;
+					responseCompletableFuture.complete(new Response(message.getId(), message.getResult(), error, null));
 				}
 			}
 		}
@@ -326,17 +739,25 @@ class AutomationServerImpl implements AutomationServer {
 			log.trace("Started automation server");
 		}
 		private String getId(WebSocket conn) {
-			final String id = conn.getAttachment();
-			if (id != null) {
-				return id;
+			ConnectionContext connection = conn.getAttachment();
+			if (connection == null) {
+				connection = new ConnectionContext(parseId(conn), WireFormat.JSON);
+				conn.setAttachment(connection);
 			}
-			if (conn.getResourceDescriptor().length() > 0) {
-				conn.setAttachment(conn.getResourceDescriptor().substring(1));
+			return connection.getId();
+		}
+		private String parseId(WebSocket conn) {
+			return parseId(conn.getResourceDescriptor());
+		}
+		private String parseId(String resource) {
+			final int query = resource.indexOf('?');
+			if (query >= 0) {
+				resource = resource.substring(0, query);
 			}
-			else {
-				conn.setAttachment(UUID.randomUUID().toString());
+			if (resource.length() > 1) {
+				return resource.substring(1);
 			}
-			return conn.getAttachment();
+			return UUID.randomUUID().toString();
 		}
 	}
 
@@ -358,6 +779,8 @@ class AutomationServerImpl implements AutomationServer {
 		private final String id;
 		private final JsonElement result;
 		private final RpcError error;
+		// Raw result bytes received as an attachment frame instead of a json result
+		private final transient ByteBuffer attachment;
 	}
 
 	@Value
@@ -371,6 +794,8 @@ class AutomationServerImpl implements AutomationServer {
 	@Builder
 	static class AutomationRequest<R> {
 		private final String method;
+		// Overrides the server's default request timeout when set
+		private final Duration timeout;
 		@Singular
 		private final List<?> params;
 		private final Class<? extends R> returnType;
@@ -379,10 +804,64 @@ class AutomationServerImpl implements AutomationServer {
 		private final R defaultValue;
 	}
 
+	/**
+	 * Collects requests for a single client and writes them as one JSON-RPC batch frame
+	 */
+	@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+	class Batch {
+		private final String clientId;
+		private final List<Request> messages = new ArrayList<>();
+		// Requests only become pending and start timing out once the batch is sent
+		private final List<Runnable> registrations = new ArrayList<>();
+
+		<R> CompletableFuture<R> add(AutomationRequest<R> automationRequest) {
+			final Request message = toRequest(automationRequest);
+			final CompletableFuture<R> result = new CompletableFuture<>();
+			messages.add(message);
+			registrations.add(() -> registerPending(clientId, message, automationRequest)
+					.whenComplete((response, e) -> {
+						if (e != null) {
+							result.completeExceptionally(e);
+						}
+						else {
+							result.complete(response);
+						}
+					}));
+			return result;
+		}
+
+		void send() {
+			if (messages.isEmpty()) {
+				return;
+			}
+			registrations.forEach(Runnable::run);
+			log.debug("Attempting to send batch of {} automation requests for client (clientId={})",
+					messages.size(), clientId);
+			final WebSocket context = clientConnections.get(clientId);
+			try {
+				if (context == null) {
+					throw new AutomationException("Client not connected");
+				}
+				final long bytes = write(context, messages);
+				messages.forEach(message -> recordSent(clientId, message.getMethod(), bytes / messages.size()));
+			}
+			catch (Exception e) {
+				messages.forEach(message -> fail(message, e));
+			}
+		}
+	}
+
+	@Value
+	private static class ConnectionContext {
+		private final String id;
+		private final WireFormat format;
+	}
+
 	@Value
 	static class WaitForConnectionContext {
 		private final String id;
-		private final CountDownLatch countdownLatch = new CountDownLatch(1);
+		// Completed by the websocket thread, so launches don't hold a thread while waiting to connect
+		private final CompletableFuture<Void> connection = new CompletableFuture<>();
 	}
 
 	// Builder class generated by lombok, we need to specify we implement this interface
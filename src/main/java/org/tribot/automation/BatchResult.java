@@ -0,0 +1,107 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The results of an executed {@link AutomationBatch}. Only values that were included in the batch can be read.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class BatchResult {
+
+	private final AutomationBatchImpl batch;
+
+	/**
+	 * @return the account username, or null if not logged in yet
+	 * @throws IllegalStateException if the username was not included in the batch
+	 */
+	public String getUsername() {
+		return get(batch.getUsername(), "username");
+	}
+
+	/**
+	 * @return the login name, or null if no login name
+	 * @throws IllegalStateException if the login name was not included in the batch
+	 */
+	public String getLoginName() {
+		return get(batch.getLoginName(), "loginName");
+	}
+
+	/**
+	 * @return the script name, or null if no script is running
+	 * @throws IllegalStateException if the script name was not included in the batch
+	 */
+	public String getScriptName() {
+		return get(batch.getScriptName(), "scriptName");
+	}
+
+	/**
+	 * @return the current world of the client
+	 * @throws IllegalStateException if the world was not included in the batch
+	 */
+	public int getWorld() {
+		return get(batch.getWorld(), "world");
+	}
+
+	/**
+	 * @return the in-game position of the client, or null if not logged in yet
+	 * @throws IllegalStateException if the tile was not included in the batch
+	 */
+	public Tile getTile() {
+		return get(batch.getTile(), "tile");
+	}
+
+	/**
+	 * @return true if the client is logged in, false otherwise
+	 * @throws IllegalStateException if the login state was not included in the batch
+	 */
+	public boolean isLoggedIn() {
+		return get(batch.getLoggedIn(), "loggedIn");
+	}
+
+	/**
+	 * @return all skill levels, or an empty map if not logged in yet
+	 * @throws IllegalStateException if the skill levels were not included in the batch
+	 */
+	public Map<Skill, Integer> getAllSkillLevels() {
+		return get(batch.getSkillLevels(), "skillLevels");
+	}
+
+	/**
+	 * @return all inventory items (empty if not logged in yet)
+	 * @throws IllegalStateException if the inventory was not included in the batch
+	 */
+	public List<Item> getInventoryItems() {
+		return get(batch.getInventory(), "inventory");
+	}
+
+	/**
+	 * @param index the game setting index
+	 * @return the game setting at the specified index
+	 * @throws IllegalStateException if the game setting was not included in the batch
+	 */
+	public int getGameSetting(int index) {
+		return get(batch.getGameSettings().get(index), "gameSetting " + index);
+	}
+
+	/**
+	 * @param index the varbit index
+	 * @return the varbit at the specified index
+	 * @throws IllegalStateException if the varbit was not included in the batch
+	 */
+	public int getVarbit(int index) {
+		return get(batch.getVarbits().get(index), "varbit " + index);
+	}
+
+	private <T> T get(CompletableFuture<T> value, String name) {
+		if (value == null) {
+			throw new IllegalStateException(name + " was not included in the batch");
+		}
+		return value.join();
+	}
+
+}
@@ -0,0 +1,161 @@
+package org.tribot.automation;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * A fleet-wide operation started by {@link AutomationServer#broadcast}. Results and failures can be read as they
+ * arrive, while the operation is still running on other clients.
+ *
+ * @param <T> the result type of the operation
+ */
+public class Broadcast<T> {
+
+	private final Function<AsyncAutomationClient, CompletableFuture<T>> operation;
+	private final int clientCount;
+	private final CompletableFuture<Broadcast<T>> completion = new CompletableFuture<>();
+
+	// Guarded by this
+	private final Iterator<AutomationClient> remaining;
+	private final Map<AutomationClient, T> results = new LinkedHashMap<>();
+	private final Map<AutomationClient, AutomationException> failures = new LinkedHashMap<>();
+
+	private Broadcast(Collection<AutomationClient> clients, Function<AsyncAutomationClient, CompletableFuture<T>> operation) {
+		this.operation = operation;
+		this.clientCount = clients.size();
+		this.remaining = new ArrayList<>(clients).iterator();
+	}
+
+	static <T> Broadcast<T> start(Collection<AutomationClient> clients,
+	                              Function<AsyncAutomationClient, CompletableFuture<T>> operation, int parallelism) {
+		final Broadcast<T> broadcast = new Broadcast<>(clients, operation);
+		if (clients.isEmpty()) {
+			broadcast.completion.complete(broadcast);
+			return broadcast;
+		}
+		// Each lane runs the operation on one client at a time
+		final int lanes = parallelism > 0 ? Math.min(parallelism, clients.size()) : clients.size();
+		for (int i = 0; i < lanes; i++) {
+			broadcast.runLane();
+		}
+		return broadcast;
+	}
+
+	/**
+	 * @return the number of clients the operation is run on
+	 */
+	public int getClientCount() {
+		return clientCount;
+	}
+
+	/**
+	 * @return the number of clients that have completed the operation so far, successfully or not
+	 */
+	public synchronized int getCompletedCount() {
+		return results.size() + failures.size();
+	}
+
+	/**
+	 * @return true if every client has completed the operation
+	 */
+	public boolean isDone() {
+		return completion.isDone();
+	}
+
+	/**
+	 * @return true if every client has completed the operation successfully so far
+	 */
+	public synchronized boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * @return the results of the clients that have completed successfully so far
+	 */
+	public synchronized Map<AutomationClient, T> getResults() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(results));
+	}
+
+	/**
+	 * @return the failures of the clients that have completed unsuccessfully so far
+	 */
+	public synchronized Map<AutomationClient, AutomationException> getFailures() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+	}
+
+	/**
+	 * Waits for every client to complete the operation. Each request waits at most its own deadline, see
+	 * {@link AsyncAutomationClient#withTimeout}.
+	 *
+	 * @return this broadcast, with all results and failures
+	 */
+	public Broadcast<T> await() {
+		return completion.join();
+	}
+
+	/**
+	 * @return a future completed with this broadcast once every client has completed the operation
+	 */
+	public CompletableFuture<Broadcast<T>> toCompletableFuture() {
+		return completion.copy();
+	}
+
+	private void runLane() {
+		// Loops while operations complete immediately (ex. cached reads), to not recurse once per client
+		while (true) {
+			final AutomationClient client;
+			synchronized (this) {
+				if (!remaining.hasNext()) {
+					return;
+				}
+				client = remaining.next();
+			}
+			final CompletableFuture<T> future = apply(client);
+			if (!future.isDone()) {
+				future.whenComplete((result, e) -> {
+					complete(client, future);
+					runLane();
+				});
+				return;
+			}
+			complete(client, future);
+		}
+	}
+
+	private CompletableFuture<T> apply(AutomationClient client) {
+		try {
+			final CompletableFuture<T> future = operation.apply(client.async());
+			return future != null ? future : CompletableFuture.completedFuture(null);
+		}
+		catch (Exception e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private void complete(AutomationClient client, CompletableFuture<T> future) {
+		final boolean done;
+		synchronized (this) {
+			try {
+				results.put(client, future.get());
+			}
+			catch (ExecutionException | CompletionException e) {
+				final Throwable cause = e.getCause() != null ? e.getCause() : e;
+				failures.put(client, cause instanceof AutomationException
+				                     ? (AutomationException) cause
+				                     : new AutomationException(cause));
+			}
+			catch (Exception e) {
+				// Cancelled by the operation, or interrupted
+				failures.put(client, new AutomationException(e));
+			}
+			done = results.size() + failures.size() == clientCount;
+		}
+		if (done) {
+			completion.complete(this);
+		}
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Hit and miss counts of a client's state cache, see {@link StateCacheSettings}
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class CacheStats {
+
+	static final CacheStats EMPTY = new CacheStats(0, 0);
+
+	/**
+	 * The number of reads answered from the cache, including reads that joined a request already in flight
+	 */
+	private final long hits;
+	/**
+	 * The number of reads that were sent to the client
+	 */
+	private final long misses;
+
+	/**
+	 * Gets the ratio of reads answered from the cache
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if nothing was read yet
+	 */
+	public double getHitRate() {
+		final long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+}
@@ -2,16 +2,21 @@ package org.tribot.automation;
 
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 import lombok.Builder;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -24,9 +29,13 @@ import java.util.stream.Collectors;
 @Slf4j
 public class Client {
 
-	private static final TribotSplash splash = new TribotSplash();
+	private static final SshSessionPool sshSessions = new SshSessionPool();
+	private static final TribotSplash splash = new TribotSplash(sshSessions);
 	private static final File NULL_FILE = new File((System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null"));
-	private static final Pattern LAUNCHED_PID_REGEX = Pattern.compile(".*tribotpid:(\\d+).*");
+	private static final Pattern LAUNCHED_PID_REGEX = LauncherAgent.LAUNCHED_PID_REGEX;
+	private static final Duration CONNECTION_TIMEOUT = Duration.ofSeconds(60);
+	// Runs single async launches, these block on process output so they get their own threads
+	private static final Executor LAUNCH_EXECUTOR = Executors.newCachedThreadPool(newLaunchThreadFactory());
 
 	/**
 	 * The initial script name to run
@@ -96,12 +105,25 @@ public class Client {
 	 */
 	private final SshSettings sshSettings;
 
+	/**
+	 * Whether to offer the client binary MessagePack frames instead of json, which are much smaller for remote
+	 * clients. The connection only switches if the client asks for it in its handshake, otherwise it stays on json.
+	 */
+	private final boolean binaryProtocol;
+
+	/**
+	 * Listens to the phases of launching this client, ex. a {@link LaunchMetrics} shared by a fleet of clients to find
+	 * the slowest phases per host
+	 */
+	private final LaunchListener launchListener;
+
 	/**
 	 * Launches the client and waits for it to be launched
 	 *
 	 * @throws LaunchException if there was an issue launching the client
 	 */
 	public void launch() throws LaunchException {
+		final LaunchTimer.Span total = launchTimer().start(LaunchPhase.TOTAL);
 		try {
 			log.debug("Launching client");
 			final String id = UUID.randomUUID().toString();
@@ -112,6 +134,9 @@ public class Client {
 			log.debug("Failed to launch client", e);
 			throw new LaunchException(e);
 		}
+		finally {
+			total.end();
+		}
 	}
 
 	/**
@@ -122,63 +147,239 @@ public class Client {
 	 * @throws LaunchException if there was an issue launching the client
 	 */
 	public AutomationClient launch(AutomationServer automationServer) throws LaunchException {
-		if (!(automationServer instanceof AutomationServerImpl)) {
-			throw new LaunchException("Unknown automation server: " + automationServer + ". Server must be created through AutomationServer#create");
+		final AutomationServerImpl automationServerImpl = toServerImpl(automationServer);
+		log.debug("Launching client with automation server");
+		final LaunchTimer.Span total = launchTimer().start(LaunchPhase.TOTAL);
+		final CompletableFuture<String> splashPath;
+		try {
+			splashPath = CompletableFuture.completedFuture(updateSplash());
 		}
-		final AutomationServerImpl automationServerImpl = (AutomationServerImpl) automationServer;
+		catch (Exception e) {
+			total.end();
+			log.debug("Failed to launch client", e);
+			throw new LaunchException(e);
+		}
+		// Runs the launch on this thread
+		return await(launchAsync(automationServerImpl, splashPath, Runnable::run, total));
+	}
+
+	/**
+	 * Launches the client without blocking. The launch runs on a background thread, and waiting for the client to
+	 * connect to the automation server does not hold a thread.
+	 *
+	 * @param automationServer the automation server to connect the client to
+	 * @return a future completed with an automation client representing the launched client once it is connected, or
+	 * completed exceptionally with a {@link LaunchException} if there was an issue launching the client
+	 */
+	public CompletableFuture<AutomationClient> launchAsync(AutomationServer automationServer) {
+		final AutomationServerImpl automationServerImpl;
 		try {
-			log.debug("Launching client with automation server");
-			final String id = UUID.randomUUID().toString();
-			final String splashPath = updateSplash();
-			final var waitForConnectionContext = new AutomationServerImpl.WaitForConnectionContext(id);
+			automationServerImpl = toServerImpl(automationServer);
+		}
+		catch (LaunchException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		final LaunchTimer.Span total = launchTimer().start(LaunchPhase.TOTAL);
+		return launchAsync(automationServerImpl, prepareSplash(LAUNCH_EXECUTOR), LAUNCH_EXECUTOR, total);
+	}
+
+	/**
+	 * Launches many clients concurrently. The splash jar is prepared once per host, then each client's process is
+	 * started while other clients are still starting or connecting. At most {@code concurrency} clients are being
+	 * started at once, clients that are waiting to connect don't count towards it.
+	 *
+	 * @param clients the clients to launch
+	 * @param automationServer the automation server to connect the clients to
+	 * @param concurrency the maximum number of clients to start at once
+	 * @return a future for each client, in the same order as {@code clients}, see {@link #launchAsync}
+	 */
+	public static List<CompletableFuture<AutomationClient>> launchAll(List<Client> clients,
+	                                                                  AutomationServer automationServer,
+	                                                                  int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+		}
+		final AutomationServerImpl automationServerImpl = toServerImpl(automationServer);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, clients.size())),
+				newLaunchThreadFactory());
+		// Null for the local machine
+		final Map<SshSettings, CompletableFuture<String>> splashPaths = new HashMap<>();
+		final List<CompletableFuture<AutomationClient>> launches = clients.stream()
+				.map(client -> {
+					final LaunchTimer.Span total = client.launchTimer().start(LaunchPhase.TOTAL);
+					return client.launchAsync(automationServerImpl,
+							splashPaths.computeIfAbsent(client.getSshSettings(), host -> client.prepareSplash(executor)),
+							executor, total);
+				})
+				.collect(Collectors.toList());
+		CompletableFuture.allOf(launches.toArray(new CompletableFuture[0]))
+				.whenComplete((v, e) -> executor.shutdown());
+		return launches;
+	}
+
+	/**
+	 * Uploads the latest tribot-splash.jar to many remote hosts at once, ex. before launching clients on them or
+	 * after a new release. Hosts that already have it are skipped, and later launches to these hosts don't check it
+	 * again for an hour.
+	 *
+	 * @param hosts the hosts to upload the jar to
+	 * @param parallelism the maximum number of hosts to upload to at once
+	 * @return the hosts that failed, with the reason they failed. Empty if every host has the jar.
+	 * @throws LaunchException if the local jar could not be updated
+	 */
+	public static Map<SshSettings, LaunchException> distributeSplash(Collection<SshSettings> hosts, int parallelism)
+			throws LaunchException {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		try {
+			final Map<SshSettings, LaunchException> failures = new HashMap<>();
+			splash.distribute(hosts, parallelism).forEach((host, e) -> failures.put(host, new LaunchException(e)));
+			return failures;
+		}
+		catch (IOException e) {
+			throw new LaunchException(e);
+		}
+	}
+
+	private CompletableFuture<AutomationClient> launchAsync(AutomationServerImpl automationServer,
+	                                                        CompletableFuture<String> splashPath, Executor executor,
+	                                                        LaunchTimer.Span total) {
+		final String id = UUID.randomUUID().toString();
+		final var waitForConnectionContext = new AutomationServerImpl.WaitForConnectionContext(id);
+		automationServer.register(waitForConnectionContext);
+		return splashPath
+				.thenApplyAsync(path -> {
+					try {
+						return launchProcess(path, id, automationServer);
+					}
+					catch (Exception e) {
+						throw new LaunchException(e);
+					}
+				}, executor)
+				.thenCompose(pid -> {
+					log.debug("Waiting for automation connection {}", id);
+					final LaunchTimer.Span connecting = launchTimer().start(LaunchPhase.CONNECTION_WAIT);
+					return waitForConnectionContext.getConnection()
+							.orTimeout(CONNECTION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+							.whenComplete((connected, e) -> connecting.end());
+				})
+				.handle((connected, e) -> {
+					total.end();
+					automationServer.unregister(waitForConnectionContext);
+					if (e != null) {
+						final LaunchException launchException = toLaunchException(e);
+						log.debug("Failed to launch client", launchException);
+						throw launchException;
+					}
+					log.debug("Automation client connected {}", id);
+					return automationServer.getClient(id);
+				});
+	}
+
+	private CompletableFuture<String> prepareSplash(Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
 			try {
-				automationServerImpl.register(waitForConnectionContext);
-				launchProcess(splashPath, id, automationServerImpl);
-				log.debug("Waiting for automation connection {}", id);
-				final boolean connected = waitForConnectionContext.getCountdownLatch()
-						.await(60, TimeUnit.SECONDS);
-				log.debug("Automation client connected {}: {}", id, connected);
-				if (!connected) {
-					throw new IllegalStateException("No automation connection found after launch");
-				}
-				return new AutomationClientImpl(automationServerImpl, id);
+				return updateSplash();
 			}
-			finally {
-				automationServerImpl.unregister(waitForConnectionContext);
+			catch (Exception e) {
+				throw new LaunchException(e);
 			}
+		}, executor);
+	}
+
+	private static AutomationServerImpl toServerImpl(AutomationServer automationServer) throws LaunchException {
+		if (!(automationServer instanceof AutomationServerImpl)) {
+			throw new LaunchException("Unknown automation server: " + automationServer + ". Server must be created through AutomationServer#create");
 		}
-		catch (Exception e) {
-			log.debug("Failed to launch client", e);
-			throw new LaunchException(e);
+		return (AutomationServerImpl) automationServer;
+	}
+
+	private static LaunchException toLaunchException(Throwable e) {
+		final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		if (cause instanceof LaunchException) {
+			return (LaunchException) cause;
 		}
+		if (cause instanceof TimeoutException) {
+			return new LaunchException("No automation connection found after launch");
+		}
+		return new LaunchException(cause);
+	}
+
+	private static <T> T await(CompletableFuture<T> future) throws LaunchException {
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			throw toLaunchException(e);
+		}
+	}
+
+	private static ThreadFactory newLaunchThreadFactory() {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			final Thread thread = new Thread(r, "tribot-launcher-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
 	}
 
 	private String updateSplash() throws Exception {
 		return this.getSshSettings() != null
-		       ? splash.update(this.getSshSettings())
-		       : splash.update();
+		       ? splash.update(this.getSshSettings(), launchTimer())
+		       : splash.update(launchTimer());
+	}
+
+	private LaunchTimer launchTimer() {
+		return new LaunchTimer(launchListener, sshSettings != null ? sshSettings.getHost() : LaunchTimer.LOCAL_HOST);
 	}
 
-	// This also waits till the client is open
-	private long extractPid(Process process) {
-		try (final BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+	// This also waits till the client is open. The rest of the output is read in the background, onEnd runs once
+	// it has all been read.
+	private long readPid(InputStream output, Runnable onEnd, Supplier<String> failure) {
+		final BufferedReader br = new BufferedReader(new InputStreamReader(output));
+		try {
 			while (true) {
 				final String line = br.readLine();
 				if (line == null) {
-					throw new LaunchException("Failed to find client after launch");
+					throw new LaunchException(failure.get());
 				}
 				log.trace("Output from launched client: " + line);
 				final Matcher matcher = LAUNCHED_PID_REGEX.matcher(line);
 				if (matcher.matches()) {
-					if (debug) {
-						br.lines().forEach(s -> log.debug("Client output: " + s));
-					}
+					LAUNCH_EXECUTOR.execute(() -> drain(br, onEnd));
 					return Long.parseLong(matcher.group(1));
 				}
 			}
 		}
+		catch (IOException | RuntimeException e) {
+			try {
+				br.close();
+			}
+			catch (IOException ex) {
+				e.addSuppressed(ex);
+			}
+			throw e instanceof LaunchException ? (LaunchException) e : new LaunchException(e);
+		}
+	}
+
+	private void drain(BufferedReader br, Runnable onEnd) {
+		try (br) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (debug) {
+					log.debug("Client output: " + line);
+				}
+				else {
+					log.trace("Output from launched client: " + line);
+				}
+			}
+		}
 		catch (IOException e) {
-			throw new LaunchException(e);
+			log.trace("Failed to read client output", e);
+		}
+		finally {
+			onEnd.run();
 		}
 	}
 
@@ -186,64 +387,80 @@ public class Client {
 			throws Exception {
 		final List<String> args = getArguments(tribotSplashPath, id, automationServer);
 		log.debug("Generated client arguments: " + args);
+		if (this.getSshSettings() != null && this.getSshSettings().isLauncherAgent() && automationServer != null) {
+			log.trace("Launcher agent enabled; launching through the host's agent");
+			return automationServer.getLauncherAgents().launch(this.getSshSettings(), sshSessions, id, args,
+					launchTimer());
+		}
 		if (this.getSshSettings() != null) {
 			log.trace("SSH config provided; launching through ssh");
 			return launchRemoteClient(args);
 		}
-		final Process localProcess = new ProcessBuilder()
+		final LaunchTimer timer = launchTimer();
+		final Process localProcess = timer.time(LaunchPhase.PROCESS_START, () -> new ProcessBuilder()
 				.redirectErrorStream(true)
 				.redirectInput(NULL_FILE)
 				.command(args)
 				.redirectOutput(ProcessBuilder.Redirect.PIPE)
-				.start();
-		return extractPid(localProcess);
+				.start());
+		return timer.time(LaunchPhase.PID_WAIT,
+				() -> readPid(localProcess.getInputStream(), () -> {}, () -> "Failed to find client after launch"));
 	}
 
-	private long launchRemoteClient(List<String> args) throws JSchException, InterruptedException {
-		final Session session = this.getSshSettings().createSession();
+	private long launchRemoteClient(List<String> args) throws JSchException, IOException {
+		final LaunchTimer timer = launchTimer();
+		final LaunchTimer.Span start = timer.start(LaunchPhase.PROCESS_START);
+		final SshSessionPool.Lease lease;
+		final ChannelExec channel;
 		try {
-			final ChannelExec channel = (ChannelExec) session.openChannel("exec");
-			try {
-				final String cmd = args.stream()
-				                       .map(s -> {
-										   if (s.contains(" ")) {
-											   return '"' + s + '"';
-										   }
-										   return s;
-				                       })
-				                       .collect(Collectors.joining(" "));
-				log.debug("Launching remote client: {}", cmd);
-				if (getSshSettings().getDisplay() != null && !getSshSettings().getDisplay().isEmpty()) {
-					channel.setCommand("export DISPLAY=" + getSshSettings().getDisplay() + " && " + cmd);
-				}
-				else {
-					channel.setCommand(cmd);
-				}
-				ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
-				channel.setOutputStream(responseStream);
-				ByteArrayOutputStream errorResponseStream = new ByteArrayOutputStream();
-				channel.setErrStream(errorResponseStream);
-				channel.connect();
-				while (channel.isConnected()) {
-					Thread.sleep(100);
-				}
-				log.debug("Error stream: {}", errorResponseStream);
-				return responseStream.toString().lines()
-						.peek(s -> log.trace("Output from launched client: {}", s))
-						.map(LAUNCHED_PID_REGEX::matcher)
-						.filter(Matcher::matches)
-						.findFirst()
-						.map(m -> m.group(1))
-						.map(Long::parseLong)
-						.orElseThrow(() -> new IllegalStateException("Failed to find launch process id: error " +
-						                                             "stream: " + errorResponseStream.toString()));
+			lease = sshSessions.lease(this.getSshSettings());
+		}
+		catch (JSchException | RuntimeException e) {
+			start.end();
+			throw e;
+		}
+		try {
+			channel = (ChannelExec) lease.getSession().openChannel("exec");
+		}
+		catch (JSchException | RuntimeException e) {
+			start.end();
+			lease.close();
+			throw e;
+		}
+		// Held until the remote launcher exits and all of its output has been read
+		final Runnable onEnd = () -> {
+			channel.disconnect();
+			lease.close();
+		};
+		try {
+			final String cmd = args.stream()
+			                       .map(s -> {
+									   if (s.contains(" ")) {
+										   return '"' + s + '"';
+									   }
+									   return s;
+			                       })
+			                       .collect(Collectors.joining(" "));
+			log.debug("Launching remote client: {}", cmd);
+			if (getSshSettings().getDisplay() != null && !getSshSettings().getDisplay().isEmpty()) {
+				channel.setCommand("export DISPLAY=" + getSshSettings().getDisplay() + " && " + cmd);
 			}
-			finally {
-				channel.disconnect();
+			else {
+				channel.setCommand(cmd);
 			}
+			final ByteArrayOutputStream errorResponseStream = new ByteArrayOutputStream();
+			channel.setErrStream(errorResponseStream);
+			// Must be requested before connecting
+			final InputStream output = channel.getInputStream();
+			channel.connect();
+			start.end();
+			return timer.time(LaunchPhase.PID_WAIT, () -> readPid(output, onEnd,
+					() -> "Failed to find launch process id: error stream: " + errorResponseStream));
 		}
-		finally {
-			session.disconnect();
+		catch (JSchException | IOException | RuntimeException e) {
+			start.end();
+			onEnd.run();
+			throw e;
 		}
 	}
 
@@ -316,7 +533,8 @@ public class Client {
 
 		if (automationServer != null) {
 			args.add("--automation-url");
-			args.add(automationServer.getConnectionUrl(id, this.getSshSettings() == null));
+			args.add(automationServer.getConnectionUrl(id, this.getSshSettings() == null,
+					isBinaryProtocol() ? WireFormat.MESSAGE_PACK : WireFormat.JSON));
 		}
 
 		if (getDevelopmentSettings() != null && getDevelopmentSettings().getDaxWalkerDevelopmentMode() != null) {
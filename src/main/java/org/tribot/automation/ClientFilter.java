@@ -0,0 +1,51 @@
+package org.tribot.automation;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Selects connected clients by their last known state, see {@link AutomationServer#clientsWhere(ClientFilter)}.
+ * Every non-null value must match. A filter without any values matches all connected clients.
+ */
+@Value
+@Builder
+public class ClientFilter {
+
+	/**
+	 * The account username
+	 */
+	private final String username;
+	/**
+	 * The name of the running script
+	 */
+	private final String scriptName;
+	/**
+	 * The current world
+	 */
+	private final Integer world;
+	/**
+	 * Whether the client is logged in
+	 */
+	private final Boolean loggedIn;
+
+	Map<ClientIndex.Attribute, Object> getCriteria() {
+		final Map<ClientIndex.Attribute, Object> criteria = new EnumMap<>(ClientIndex.Attribute.class);
+		if (username != null) {
+			criteria.put(ClientIndex.Attribute.USERNAME, username);
+		}
+		if (scriptName != null) {
+			criteria.put(ClientIndex.Attribute.SCRIPT_NAME, scriptName);
+		}
+		if (world != null) {
+			criteria.put(ClientIndex.Attribute.WORLD, world);
+		}
+		if (loggedIn != null) {
+			criteria.put(ClientIndex.Attribute.LOGGED_IN, loggedIn);
+		}
+		return criteria;
+	}
+
+}
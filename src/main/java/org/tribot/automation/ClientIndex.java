@@ -0,0 +1,82 @@
+package org.tribot.automation;
+
+import java.util.*;
+
+/**
+ * Secondary indexes over the last known state of each client, kept up to date from reads and events. Lookups
+ * intersect the index entries of each criterion, starting from the smallest, so they cost time proportional to
+ * the matches rather than to the number of clients.
+ */
+class ClientIndex {
+
+	enum Attribute {
+		USERNAME,
+		SCRIPT_NAME,
+		WORLD,
+		LOGGED_IN
+	}
+
+	// Guarded by this
+	private final Map<Attribute, Map<Object, Set<String>>> clientsByValue = new EnumMap<>(Attribute.class);
+	private final Map<String, Map<Attribute, Object>> valuesByClient = new HashMap<>();
+
+	ClientIndex() {
+		for (Attribute attribute : Attribute.values()) {
+			clientsByValue.put(attribute, new HashMap<>());
+		}
+	}
+
+	// A null value means unknown, the client is removed from that index
+	synchronized void update(String clientId, Attribute attribute, Object value) {
+		final Map<Attribute, Object> values = valuesByClient.computeIfAbsent(clientId, id -> new EnumMap<>(Attribute.class));
+		final Object previous = value != null ? values.put(attribute, value) : values.remove(attribute);
+		if (Objects.equals(previous, value)) {
+			return;
+		}
+		final Map<Object, Set<String>> index = clientsByValue.get(attribute);
+		if (previous != null) {
+			final Set<String> clients = index.get(previous);
+			clients.remove(clientId);
+			if (clients.isEmpty()) {
+				index.remove(previous);
+			}
+		}
+		if (value != null) {
+			index.computeIfAbsent(value, v -> new HashSet<>()).add(clientId);
+		}
+	}
+
+	synchronized void remove(String clientId) {
+		final Map<Attribute, Object> values = valuesByClient.remove(clientId);
+		if (values == null) {
+			return;
+		}
+		values.forEach((attribute, value) -> {
+			final Map<Object, Set<String>> index = clientsByValue.get(attribute);
+			final Set<String> clients = index.get(value);
+			clients.remove(clientId);
+			if (clients.isEmpty()) {
+				index.remove(value);
+			}
+		});
+	}
+
+	// The criteria must not be empty
+	synchronized Set<String> find(Map<Attribute, Object> criteria) {
+		final List<Set<String>> matches = new ArrayList<>(criteria.size());
+		for (Map.Entry<Attribute, Object> criterion : criteria.entrySet()) {
+			final Set<String> clients = clientsByValue.get(criterion.getKey()).get(criterion.getValue());
+			if (clients == null) {
+				return Set.of();
+			}
+			matches.add(clients);
+		}
+		matches.sort(Comparator.comparingInt(Set::size));
+		final Set<String> result = new HashSet<>(matches.get(0));
+		for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+			result.retainAll(matches.get(i));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,492 @@
+package org.tribot.automation;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Simulates a fleet of TRiBot clients connected to an automation server, so the server can be load tested without
+ * launching game clients. Each simulated client answers the requests {@link AutomationClient} sends with made up
+ * state, pushes events, and can be made slow, flaky or disconnect in storms.
+ * <p>
+ * Ex. {@code ClientSimulator.builder().url("ws://127.0.0.1:8080/{id}").clients(5000).build().start()}
+ */
+@Slf4j
+public class ClientSimulator implements AutoCloseable {
+
+	private static final int DEFAULT_CLIENTS = 100;
+	private static final int DEFAULT_INVENTORY_SIZE = 28;
+	// The fixed mode game screen
+	private static final int DEFAULT_SCREENSHOT_WIDTH = 765;
+	private static final int DEFAULT_SCREENSHOT_HEIGHT = 503;
+	// Opening thousands of connections at once only times out the handshakes
+	private static final int CONNECT_PARALLELISM = 64;
+	// Plus a random delay of up to as long again, so clients dropped together don't all reconnect together
+	private static final Duration RECONNECT_DELAY = Duration.ofMillis(250);
+	private static final Gson gson = new Gson();
+
+	private final String url;
+	private final int clients;
+	private final String idPrefix;
+	private final Duration latency;
+	private final Duration latencyJitter;
+	private final double errorRate;
+	private final int inventorySize;
+	private final Duration eventInterval;
+	private final Duration reconnectInterval;
+	private final double reconnectFraction;
+	private final String screenshot;
+
+	private final HttpClient httpClient;
+	private final ScheduledExecutorService scheduler;
+	private final List<SimulatedClient> simulatedClients = new ArrayList<>();
+	private final Semaphore connectPermits = new Semaphore(CONNECT_PARALLELISM);
+
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder connectFailures = new LongAdder();
+	private final LongAdder disconnects = new LongAdder();
+	private final LatencyHistogram connectLatency = new LatencyHistogram();
+	private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder eventsSent = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+
+	private volatile long startedAt;
+	private volatile boolean closed;
+
+	/**
+	 * @param url the automation url with an {@code {id}} placeholder, ex. {@code ws://127.0.0.1:8080/{id}}
+	 * @param clients the number of clients to simulate, defaults to 100
+	 * @param idPrefix prefix of the simulated client ids, which are numbered from 0. Defaults to {@code simulated-}
+	 * @param latency how long a client takes to answer a request, defaults to immediately
+	 * @param latencyJitter a random extra delay of up to this long for each answer
+	 * @param errorRate the fraction of requests answered with an error, between 0 and 1
+	 * @param inventorySize the number of items in each inventory, defaults to 28
+	 * @param screenshotWidth the width of the screenshots, defaults to 765
+	 * @param screenshotHeight the height of the screenshots, defaults to 503
+	 * @param eventInterval how often each client pushes a script message event, null for never
+	 * @param reconnectInterval how often a disconnect storm happens, null for never
+	 * @param reconnectFraction the fraction of connected clients that disconnect and reconnect in each storm
+	 */
+	@lombok.Builder
+	private ClientSimulator(String url, int clients, String idPrefix, Duration latency, Duration latencyJitter,
+	                        double errorRate, int inventorySize, int screenshotWidth, int screenshotHeight,
+	                        Duration eventInterval, Duration reconnectInterval, double reconnectFraction) {
+		this.url = Objects.requireNonNull(url, "url");
+		this.clients = clients > 0 ? clients : DEFAULT_CLIENTS;
+		this.idPrefix = idPrefix != null ? idPrefix : "simulated-";
+		this.latency = latency != null ? latency : Duration.ZERO;
+		this.latencyJitter = latencyJitter != null ? latencyJitter : Duration.ZERO;
+		this.errorRate = errorRate;
+		this.inventorySize = inventorySize > 0 ? inventorySize : DEFAULT_INVENTORY_SIZE;
+		this.eventInterval = eventInterval;
+		this.reconnectInterval = reconnectInterval;
+		this.reconnectFraction = reconnectFraction;
+		this.screenshot = createScreenshot(screenshotWidth > 0 ? screenshotWidth : DEFAULT_SCREENSHOT_WIDTH,
+				screenshotHeight > 0 ? screenshotHeight : DEFAULT_SCREENSHOT_HEIGHT);
+		this.scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			final Thread thread = new Thread(r, "client-simulator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// The http client reads every connection on one selector thread, so thousands of clients don't need thousands
+		// of threads
+		this.httpClient = HttpClient.newBuilder().executor(scheduler).build();
+	}
+
+	/**
+	 * Runs a simulation from the command line and prints its report
+	 *
+	 * @param args the automation url, the number of clients and how many seconds to run for
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length != 3) {
+			System.err.println("Usage: ClientSimulator <automation url> <clients> <seconds>");
+			System.exit(1);
+		}
+		try (final ClientSimulator simulator = ClientSimulator.builder()
+				.url(args[0])
+				.clients(Integer.parseInt(args[1]))
+				.eventInterval(Duration.ofSeconds(1))
+				.build()
+				.start()) {
+			Thread.sleep(Long.parseLong(args[2]) * 1000);
+			System.out.println(simulator.getReport());
+		}
+	}
+
+	/**
+	 * Starts connecting the simulated clients, returning once every connection has been started
+	 *
+	 * @return this simulator
+	 */
+	public ClientSimulator start() throws InterruptedException {
+		startedAt = System.nanoTime();
+		for (int i = 0; i < clients; i++) {
+			final SimulatedClient client = new SimulatedClient(idPrefix + i);
+			synchronized (simulatedClients) {
+				simulatedClients.add(client);
+			}
+			connectPermits.acquire();
+			client.connect().whenComplete((v, e) -> connectPermits.release());
+		}
+		if (reconnectInterval != null) {
+			scheduler.scheduleAtFixedRate(this::disconnectStorm, reconnectInterval.toMillis(),
+					reconnectInterval.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * Waits for every simulated client to be connected
+	 *
+	 * @param timeout how long to wait
+	 * @return true if every client is connected, false if the timeout passed first
+	 */
+	public boolean awaitConnected(Duration timeout) throws InterruptedException {
+		final long deadline = System.nanoTime() + timeout.toNanos();
+		while (getConnected() < clients) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the counts and connect latencies so far
+	 */
+	public SimulationReport getReport() {
+		final Map<String, Long> requestsByMethod = requests.entrySet()
+				.stream()
+				.collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> e.getValue().sum()));
+		return new SimulationReport(Duration.ofNanos(startedAt == 0 ? 0 : System.nanoTime() - startedAt),
+				getConnected(), connects.sum(), connectFailures.sum(), disconnects.sum(), connectLatency.copy(),
+				requestsByMethod.values().stream().mapToLong(Long::longValue).sum(), requestsByMethod, errors.sum(),
+				eventsSent.sum(), bytesSent.sum(), bytesReceived.sum());
+	}
+
+	/**
+	 * Disconnects every simulated client
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		getClients().forEach(SimulatedClient::close);
+		scheduler.shutdownNow();
+	}
+
+	private int getConnected() {
+		return (int) getClients().stream().filter(client -> client.webSocket != null).count();
+	}
+
+	private List<SimulatedClient> getClients() {
+		synchronized (simulatedClients) {
+			return new ArrayList<>(simulatedClients);
+		}
+	}
+
+	private void disconnectStorm() {
+		final List<SimulatedClient> connected = getClients().stream()
+				.filter(client -> client.webSocket != null)
+				.collect(Collectors.toList());
+		Collections.shuffle(connected);
+		final int count = (int) Math.round(connected.size() * reconnectFraction);
+		log.debug("Disconnecting {} of {} simulated clients", count, connected.size());
+		connected.subList(0, count).forEach(SimulatedClient::disconnect);
+	}
+
+	// Null for methods the automation client answers without a result
+	private JsonElement getResult(SimulatedClient client, String method, JsonArray params) {
+		switch (method) {
+			case "getTabInfo": {
+				final JsonObject tabInfo = new JsonObject();
+				tabInfo.addProperty("id", 1);
+				tabInfo.addProperty("username", client.id);
+				tabInfo.addProperty("script", "Simulated");
+				return tabInfo;
+			}
+			case "getUsername":
+				return gson.toJsonTree(client.id);
+			case "getWorld":
+				return gson.toJsonTree(client.world);
+			case "isLoggedIn":
+				return gson.toJsonTree(true);
+			case "getPosition":
+				return gson.toJsonTree(new int[] { 3222 + client.random.nextInt(20), 3218 + client.random.nextInt(20), 0 });
+			case "getStat":
+				return gson.toJsonTree(99);
+			case "getAllStats":
+				return gson.toJsonTree(Arrays.stream(Skill.values())
+						.collect(Collectors.toMap(Skill::name, skill -> 99)));
+			case "getInventoryItems": {
+				final int[][] items = new int[inventorySize][];
+				for (int i = 0; i < inventorySize; i++) {
+					items[i] = new int[] { 995 + i, 1 + client.random.nextInt(1000) };
+				}
+				return gson.toJsonTree(items);
+			}
+			case "getGameSetting":
+			case "getVarbit":
+				return gson.toJsonTree(0);
+			case "watchVarbits":
+			case "watchGameSettings": {
+				// Current values of the watched ids
+				final JsonArray values = new JsonArray();
+				params.get(2).getAsJsonArray().forEach(watchedId -> {
+					final JsonArray value = new JsonArray();
+					value.add(watchedId);
+					value.add(0);
+					values.add(value);
+				});
+				return values;
+			}
+			case "getScreenshot":
+				return gson.toJsonTree(screenshot);
+			default:
+				return null;
+		}
+	}
+
+	private static String createScreenshot(int width, int height) {
+		// Noise doesn't compress, so the payload is as large as a busy game screen
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Random random = new Random(0);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		final ByteArrayOutputStream png = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(image, "png", png);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getEncoder().encodeToString(png.toByteArray());
+	}
+
+	private class SimulatedClient implements WebSocket.Listener {
+
+		private final String id;
+		private final int world;
+		private final Random random = new Random();
+		// Only touched by the websocket's listener calls, which never overlap
+		private final StringBuilder partial = new StringBuilder();
+
+		// Null while disconnected
+		private volatile WebSocket webSocket;
+		// A websocket only takes one message at a time, each send waits for the previous one. Guarded by this
+		private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+		private ScheduledFuture<?> events;
+
+		private SimulatedClient(String id) {
+			this.id = id;
+			this.world = 301 + random.nextInt(200);
+		}
+
+		private CompletableFuture<Void> connect() {
+			final long connectStart = System.nanoTime();
+			return httpClient.newWebSocketBuilder()
+					.buildAsync(URI.create(url.replace("{id}", id)), this)
+					.handle((webSocket, e) -> {
+						if (e != null) {
+							connectFailures.increment();
+							log.debug("Simulated client {} failed to connect", id, e);
+							reconnect();
+							return null;
+						}
+						connectLatency.recordNanos(System.nanoTime() - connectStart);
+						connects.increment();
+						return null;
+					});
+		}
+
+		private void reconnect() {
+			if (!closed) {
+				final long delay = RECONNECT_DELAY.toMillis()
+				                   + ThreadLocalRandom.current().nextLong(RECONNECT_DELAY.toMillis() + 1);
+				scheduler.schedule(this::connectWhenPermitted, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		// Reconnects share the connect permits, a storm is as many handshakes as a start. Never blocks the scheduler.
+		private void connectWhenPermitted() {
+			if (closed) {
+				return;
+			}
+			if (!connectPermits.tryAcquire()) {
+				reconnect();
+				return;
+			}
+			connect().whenComplete((v, e) -> connectPermits.release());
+		}
+
+		private void disconnect() {
+			final WebSocket webSocket = this.webSocket;
+			if (webSocket != null) {
+				webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+			}
+		}
+
+		private void close() {
+			disconnect();
+			final ScheduledFuture<?> events = this.events;
+			if (events != null) {
+				events.cancel(false);
+			}
+		}
+
+		@Override
+		public void onOpen(WebSocket webSocket) {
+			synchronized (this) {
+				lastSend = CompletableFuture.completedFuture(null);
+			}
+			this.webSocket = webSocket;
+			if (eventInterval != null && events == null) {
+				// Spread the clients' events over the interval instead of sending them all at once
+				events = scheduler.scheduleAtFixedRate(this::sendEvent,
+						ThreadLocalRandom.current().nextLong(eventInterval.toMillis() + 1),
+						eventInterval.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			webSocket.request(1);
+		}
+
+		@Override
+		public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+			partial.append(data);
+			if (last) {
+				final String message = partial.toString();
+				partial.setLength(0);
+				bytesReceived.add(message.getBytes(StandardCharsets.UTF_8).length);
+				try {
+					onMessage(JsonParser.parseString(message));
+				}
+				catch (Exception e) {
+					log.debug("Simulated client {} failed to handle {}", id, message, e);
+				}
+			}
+			webSocket.request(1);
+			return null;
+		}
+
+		@Override
+		public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+			// Only json is simulated
+			webSocket.request(1);
+			return null;
+		}
+
+		@Override
+		public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+			onDisconnect();
+			return null;
+		}
+
+		@Override
+		public void onError(WebSocket webSocket, Throwable error) {
+			log.debug("Simulated client {} connection failed", id, error);
+			onDisconnect();
+		}
+
+		private void onDisconnect() {
+			if (webSocket == null) {
+				return;
+			}
+			webSocket = null;
+			disconnects.increment();
+			reconnect();
+		}
+
+		private void onMessage(JsonElement message) {
+			if (message.isJsonArray()) {
+				// Batches are answered one response at a time, the server matches them by id either way
+				message.getAsJsonArray().forEach(this::onMessage);
+				return;
+			}
+			final JsonObject request = message.getAsJsonObject();
+			final JsonElement requestId = request.get("id");
+			if (requestId == null || requestId.isJsonNull()) {
+				// Notifications such as cancels need no answer
+				return;
+			}
+			final String method = request.get("method").getAsString();
+			final JsonArray params = request.has("params") && request.get("params").isJsonArray()
+					? request.getAsJsonArray("params")
+					: new JsonArray();
+			requests.computeIfAbsent(method, m -> new LongAdder()).increment();
+			final JsonObject response = new JsonObject();
+			response.addProperty("jsonrpc", "2.0");
+			response.add("id", requestId);
+			if (random.nextDouble() < errorRate) {
+				errors.increment();
+				final JsonObject error = new JsonObject();
+				error.addProperty("code", 500);
+				error.addProperty("message", "Simulated error");
+				response.add("error", error);
+			}
+			else {
+				final JsonElement result = getResult(this, method, params);
+				response.add("result", result != null ? result : JsonNull.INSTANCE);
+			}
+			final long delay = latency.toMillis()
+			                   + (latencyJitter.isZero() ? 0 : random.nextInt((int) latencyJitter.toMillis() + 1));
+			if (delay > 0) {
+				scheduler.schedule(() -> send(response.toString()), delay, TimeUnit.MILLISECONDS);
+			}
+			else {
+				send(response.toString());
+			}
+		}
+
+		private void sendEvent() {
+			final JsonObject params = new JsonObject();
+			params.addProperty("eventType", AutomationEventType.CUSTOM.getName());
+			params.addProperty("message", "simulated");
+			final JsonObject event = new JsonObject();
+			event.addProperty("jsonrpc", "2.0");
+			event.addProperty("method", "onEvent");
+			event.add("params", params);
+			if (send(event.toString())) {
+				eventsSent.increment();
+			}
+		}
+
+		// False if disconnected
+		private synchronized boolean send(String message) {
+			final WebSocket webSocket = this.webSocket;
+			if (webSocket == null) {
+				return false;
+			}
+			bytesSent.add(message.getBytes(StandardCharsets.UTF_8).length);
+			lastSend = lastSend.exceptionally(e -> null)
+					.thenCompose(v -> webSocket.sendText(message, true));
+			return true;
+		}
+
+	}
+
+}
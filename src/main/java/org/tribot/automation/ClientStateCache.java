@@ -0,0 +1,96 @@
+package org.tribot.automation;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The read-through state cache of a single client. Entries hold the response future itself, so concurrent reads
+ * of the same state share one request, and the time to live starts once the response arrives. Failed reads are
+ * never cached.
+ */
+class ClientStateCache {
+
+	@Getter
+	private final StateCacheSettings settings;
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	ClientStateCache(StateCacheSettings settings) {
+		this.settings = settings;
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> CompletableFuture<T> get(String key, Duration ttl, Supplier<CompletableFuture<T>> loader) {
+		if (ttl.isZero() || ttl.isNegative()) {
+			return loader.get();
+		}
+		final long now = System.nanoTime();
+		final Entry existing = entries.get(key);
+		if (existing != null && !existing.isExpired(now)) {
+			hits.increment();
+			return (CompletableFuture<T>) existing.future.copy();
+		}
+		final Entry entry = new Entry(new CompletableFuture<>());
+		final Entry current = entries.compute(key, (k, e) -> e != null && e != existing && !e.isExpired(now) ? e : entry);
+		if (current != entry) {
+			// Another reader refreshed it first
+			hits.increment();
+			return (CompletableFuture<T>) current.future.copy();
+		}
+		misses.increment();
+		final CompletableFuture<T> loaded;
+		try {
+			loaded = loader.get();
+		}
+		catch (RuntimeException e) {
+			entries.remove(key, entry);
+			throw e;
+		}
+		loaded.whenComplete((value, e) -> {
+			if (e != null) {
+				entries.remove(key, entry);
+				entry.future.completeExceptionally(e);
+				return;
+			}
+			entry.expiresAt = System.nanoTime() + ttl.toNanos();
+			entry.future.complete(value);
+		});
+		return (CompletableFuture<T>) entry.future.copy();
+	}
+
+	void invalidate() {
+		entries.clear();
+	}
+
+	void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	CacheStats getStats() {
+		return new CacheStats(hits.sum(), misses.sum());
+	}
+
+	private static class Entry {
+
+		private final CompletableFuture<Object> future;
+		// Until the response arrives the entry never expires, readers join the request in flight
+		private volatile long expiresAt = Long.MAX_VALUE;
+
+		private Entry(CompletableFuture<Object> future) {
+			this.future = future;
+		}
+
+		private boolean isExpired(long now) {
+			return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,207 @@
+package org.tribot.automation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs event listeners off the websocket thread. Each client has its own bounded queue that is drained by one task
+ * at a time, so a client's events are handled in order while different clients are handled in parallel.
+ * <p>
+ * Only droppable events are ever dropped when a queue is full. Others, such as lifecycle events and script requests
+ * that a script is waiting on, are queued past the capacity instead.
+ */
+@Slf4j
+class EventDispatcher {
+
+	static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	// Drops are summed up in one warning per client per interval, a slow listener drops many events at once
+	private static final Duration DROP_WARNING_INTERVAL = Duration.ofSeconds(10);
+
+	private final Executor executor;
+	// Only shut down if we created it
+	private final boolean ownsExecutor;
+	private final int queueCapacity;
+	private final EventOverflowPolicy overflowPolicy;
+	private final Map<String, SerialQueue> queues = new ConcurrentHashMap<>();
+
+	EventDispatcher(Executor executor, int queueCapacity, EventOverflowPolicy overflowPolicy) {
+		this.ownsExecutor = executor == null;
+		this.executor = executor != null ? executor : createDefaultExecutor();
+		this.queueCapacity = queueCapacity > 0 ? queueCapacity : DEFAULT_QUEUE_CAPACITY;
+		this.overflowPolicy = overflowPolicy != null ? overflowPolicy : EventOverflowPolicy.DROP_OLDEST;
+	}
+
+	/**
+	 * Queues a task for a client
+	 *
+	 * @param clientId the client
+	 * @param droppable whether the overflow policy may drop the task when the client's queue is full
+	 * @param task the task
+	 */
+	void dispatch(String clientId, boolean droppable, Runnable task) {
+		queues.computeIfAbsent(clientId, SerialQueue::new).offer(new Task(task, droppable));
+	}
+
+	void remove(String clientId) {
+		// Events already queued are still delivered
+		queues.remove(clientId);
+	}
+
+	void close() {
+		if (ownsExecutor && executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	private static Executor createDefaultExecutor() {
+		try {
+			// Java 21+, listeners that block on requests to other clients are cheap on virtual threads
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(r -> {
+				final Thread thread = new Thread(r, "automation-events-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private class SerialQueue implements Runnable {
+
+		private final String clientId;
+
+		// Guarded by this
+		private final Deque<Task> tasks = new ArrayDeque<>();
+		private Thread drainer;
+		private boolean scheduled;
+		private long dropped;
+		private long lastDropWarning;
+		private boolean warnedDrop;
+
+		private SerialQueue(String clientId) {
+			this.clientId = clientId;
+		}
+
+		private synchronized void offer(Task task) {
+			// A listener that raises an event for its own client can't wait on itself
+			while (tasks.size() >= queueCapacity && drainer != Thread.currentThread()) {
+				if (overflowPolicy == EventOverflowPolicy.DROP_NEWEST) {
+					if (task.droppable) {
+						onDropped();
+						return;
+					}
+					break;
+				}
+				if (overflowPolicy == EventOverflowPolicy.DROP_OLDEST) {
+					if (dropOldest()) {
+						onDropped();
+					}
+					else if (task.droppable) {
+						// Nothing queued may be dropped, so this one goes instead
+						onDropped();
+						return;
+					}
+					break;
+				}
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					log.warn("Interrupted while waiting for event queue of {}, dropping event", clientId);
+					return;
+				}
+			}
+			tasks.addLast(task);
+			if (!scheduled) {
+				scheduled = true;
+				try {
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException e) {
+					log.debug("Event executor shut down, dropping events for {}", clientId);
+					scheduled = false;
+					tasks.clear();
+				}
+			}
+		}
+
+		// Removes the oldest droppable task, if any
+		private boolean dropOldest() {
+			final Iterator<Task> iterator = tasks.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().droppable) {
+					iterator.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void onDropped() {
+			dropped++;
+			final long now = System.nanoTime();
+			if (!warnedDrop || now - lastDropWarning >= DROP_WARNING_INTERVAL.toNanos()) {
+				log.warn("Event listeners of {} can't keep up, dropped {} events ({})", clientId, dropped,
+						overflowPolicy);
+				warnedDrop = true;
+				lastDropWarning = now;
+				dropped = 0;
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				drainer = Thread.currentThread();
+			}
+			try {
+				while (true) {
+					final Task task;
+					synchronized (this) {
+						task = tasks.pollFirst();
+						if (task == null) {
+							scheduled = false;
+							return;
+						}
+						notifyAll();
+					}
+					try {
+						task.runnable.run();
+					}
+					catch (Exception e) {
+						log.error("Exception while processing event listener", e);
+					}
+				}
+			}
+			finally {
+				synchronized (this) {
+					drainer = null;
+				}
+			}
+		}
+
+	}
+
+	private static class Task {
+
+		private final Runnable runnable;
+		private final boolean droppable;
+
+		private Task(Runnable runnable, boolean droppable) {
+			this.runnable = runnable;
+			this.droppable = droppable;
+		}
+
+	}
+
+}
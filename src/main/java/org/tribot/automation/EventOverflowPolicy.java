@@ -0,0 +1,27 @@
+package org.tribot.automation;
+
+/**
+ * What the automation server does when a client's event queue is full because its listeners can't keep up.
+ * <p>
+ * Only script messages, screenshot frames and varbit and game setting changes are ever dropped, and every drop is
+ * logged as a warning. Lifecycle events (script end, ban, disconnect, reconnect, process exit) and script requests
+ * are always queued, even past the capacity, so a script waiting on a request always gets its response.
+ */
+public enum EventOverflowPolicy {
+
+    /**
+     * Wait for the client's listeners to catch up, so no events are lost. The wait happens on the websocket thread
+     * that reads the event, which is shared by many connections, so it stalls reading from every one of them,
+     * including responses to other clients' requests. Only use it if listeners always keep up.
+     */
+    BLOCK,
+    /**
+     * Drop the oldest queued event that may be dropped to make room for the new one. This is the default.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new event if it may be dropped
+     */
+    DROP_NEWEST
+
+}
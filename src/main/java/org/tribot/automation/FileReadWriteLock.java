@@ -0,0 +1,113 @@
+package org.tribot.automation;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A read/write lock that is also held on a file, so it excludes other JVMs as well as other threads. Readers in this
+ * JVM share one shared file lock, the file is only locked exclusively while a writer holds it.
+ * <p>
+ * A reader can't be upgraded to a writer, release the read lock first and check again once the write lock is held.
+ */
+class FileReadWriteLock {
+
+	private final Path path;
+	// The JVM only allows one lock per file, so threads in this JVM are ordered here first
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Guarded by this
+	private FileChannel sharedChannel;
+	private int readers;
+
+	FileReadWriteLock(Path path) {
+		this.path = path;
+	}
+
+	Handle read() throws IOException {
+		lock.readLock().lock();
+		try {
+			acquireShared();
+		}
+		catch (IOException | RuntimeException e) {
+			lock.readLock().unlock();
+			throw e;
+		}
+		return () -> {
+			try {
+				releaseShared();
+			}
+			finally {
+				lock.readLock().unlock();
+			}
+		};
+	}
+
+	Handle write() throws IOException {
+		lock.writeLock().lock();
+		try {
+			final FileChannel channel = open();
+			try {
+				channel.lock();
+			}
+			catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			return () -> {
+				try {
+					// Also releases the file lock
+					channel.close();
+				}
+				finally {
+					lock.writeLock().unlock();
+				}
+			};
+		}
+		catch (IOException | RuntimeException e) {
+			lock.writeLock().unlock();
+			throw e;
+		}
+	}
+
+	private synchronized void acquireShared() throws IOException {
+		if (readers == 0) {
+			final FileChannel channel = open();
+			try {
+				channel.lock(0, Long.MAX_VALUE, true);
+			}
+			catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			sharedChannel = channel;
+		}
+		readers++;
+	}
+
+	private synchronized void releaseShared() throws IOException {
+		if (--readers == 0) {
+			final FileChannel channel = sharedChannel;
+			sharedChannel = null;
+			channel.close();
+		}
+	}
+
+	private FileChannel open() throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * A held lock, released when closed
+	 */
+	interface Handle extends AutoCloseable {
+
+		@Override
+		void close() throws IOException;
+
+	}
+
+}
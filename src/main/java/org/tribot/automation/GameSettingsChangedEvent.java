@@ -0,0 +1,14 @@
+package org.tribot.automation;
+
+import lombok.Value;
+
+/**
+ * Pushed by a client when watched game settings change, see {@link StateWatcher}. Only carries the changed (id, value) pairs.
+ */
+@Value
+class GameSettingsChangedEvent implements AutomationEvent {
+
+	private final String watchId;
+	private final int[][] changes;
+
+}
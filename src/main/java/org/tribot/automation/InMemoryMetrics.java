@@ -0,0 +1,112 @@
+package org.tribot.automation;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps lock-free counters and latency histograms per JSON-RPC method, per client and for the whole fleet, ex.
+ * {@code metrics.snapshot().getMethods().get("getInventoryItems").getLatency().getPercentile(99)}
+ */
+public class InMemoryMetrics implements MetricsSink {
+
+	private static final Function<String, Counters> COUNTERS = key -> new Counters();
+
+	private final Map<String, Counters> methods = new ConcurrentHashMap<>();
+	private final Map<String, Counters> clients = new ConcurrentHashMap<>();
+	private final Counters fleet = new Counters();
+
+	@Override
+	public void onRequestSent(String clientId, String method) {
+		getMethod(method).requests.increment();
+		getClient(clientId).requests.increment();
+		fleet.requests.increment();
+	}
+
+	@Override
+	public void onRequestCompleted(String clientId, String method, Duration latency, RequestOutcome outcome) {
+		getMethod(method).complete(latency, outcome);
+		getClient(clientId).complete(latency, outcome);
+		fleet.complete(latency, outcome);
+	}
+
+	@Override
+	public void onBytesSent(String clientId, String method, long bytes) {
+		if (method != null) {
+			getMethod(method).bytesSent.add(bytes);
+		}
+		getClient(clientId).bytesSent.add(bytes);
+		fleet.bytesSent.add(bytes);
+	}
+
+	@Override
+	public void onBytesReceived(String clientId, long bytes) {
+		getClient(clientId).bytesReceived.add(bytes);
+		fleet.bytesReceived.add(bytes);
+	}
+
+	@Override
+	public void onEventDispatched(String clientId, Duration lag) {
+		getClient(clientId).eventLag.record(lag);
+		fleet.eventLag.record(lag);
+	}
+
+	@Override
+	public void onClientRemoved(String clientId) {
+		clients.remove(clientId);
+	}
+
+	/**
+	 * @return a copy of the current measurements
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(snapshot(methods), snapshot(clients), fleet.snapshot());
+	}
+
+	private static Map<String, RpcStats> snapshot(Map<String, Counters> counters) {
+		return counters.entrySet()
+				.stream()
+				.collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, e -> e.getValue().snapshot()));
+	}
+
+	private Counters getMethod(String method) {
+		return methods.computeIfAbsent(method, COUNTERS);
+	}
+
+	private Counters getClient(String clientId) {
+		return clients.computeIfAbsent(clientId, COUNTERS);
+	}
+
+	private static class Counters {
+
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder timeouts = new LongAdder();
+		private final LongAdder bytesSent = new LongAdder();
+		private final LongAdder bytesReceived = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LatencyHistogram eventLag = new LatencyHistogram();
+
+		private void complete(Duration latency, RequestOutcome outcome) {
+			this.latency.record(latency);
+			if (outcome == RequestOutcome.ERROR) {
+				errors.increment();
+			}
+			else if (outcome == RequestOutcome.TIMEOUT) {
+				timeouts.increment();
+			}
+		}
+
+		private RpcStats snapshot() {
+			final LatencyHistogram latency = this.latency.copy();
+			final long requests = this.requests.sum();
+			return new RpcStats(requests, Math.max(0, requests - latency.getCount()), errors.sum(), timeouts.sum(),
+					bytesSent.sum(), bytesReceived.sum(), latency, eventLag.copy());
+		}
+
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.tribot.automation;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies with microsecond resolution. Buckets double in width every 8 buckets, so
+ * percentiles are accurate to within 12.5% of the recorded value while the histogram stays small.
+ */
+public class LatencyHistogram {
+
+	// Each power of two range is split into this many linear buckets
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Latencies above 2^40 microseconds (~12 days) are recorded in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	LatencyHistogram() {
+	}
+
+	void record(Duration latency) {
+		recordMicros(latency.toNanos() / 1000);
+	}
+
+	void recordNanos(long nanos) {
+		recordMicros(nanos / 1000);
+	}
+
+	private void recordMicros(long micros) {
+		final long value = Math.max(0, micros);
+		buckets.incrementAndGet(getBucket(value));
+		count.increment();
+		totalMicros.add(value);
+		maxMicros.accumulateAndGet(value, Math::max);
+	}
+
+	// Not atomic across buckets, a latency recorded while copying may only be partly included
+	LatencyHistogram copy() {
+		final LatencyHistogram copy = new LatencyHistogram();
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy.buckets.set(i, buckets.get(i));
+		}
+		copy.count.add(count.sum());
+		copy.totalMicros.add(totalMicros.sum());
+		copy.maxMicros.set(maxMicros.get());
+		return copy;
+	}
+
+	/**
+	 * @return the number of recorded latencies
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean latency, or zero if nothing was recorded
+	 */
+	public Duration getMean() {
+		final long count = getCount();
+		return count == 0 ? Duration.ZERO : Duration.ofNanos(totalMicros.sum() * 1000 / count);
+	}
+
+	/**
+	 * @return the highest recorded latency, or zero if nothing was recorded
+	 */
+	public Duration getMax() {
+		return Duration.ofNanos(maxMicros.get() * 1000);
+	}
+
+	/**
+	 * Gets the latency that the given percentage of recorded latencies are at or below, ex. {@code getPercentile(99)}
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency at the percentile, or zero if nothing was recorded
+	 */
+	public Duration getPercentile(double percentile) {
+		long total = 0;
+		final long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return Duration.ZERO;
+		}
+		final long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Duration.ofNanos(Math.min(getUpperBound(i), maxMicros.get()) * 1000);
+			}
+		}
+		return getMax();
+	}
+
+	@Override
+	public String toString() {
+		return "LatencyHistogram(count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+		       + ", p99=" + getPercentile(99) + ", max=" + getMax() + ")";
+	}
+
+	private static int getBucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		final int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+		if (exponent == MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		final int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long getLowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	private static long getUpperBound(int bucket) {
+		if (bucket == BUCKET_COUNT - 1) {
+			return Long.MAX_VALUE / 1000;
+		}
+		return getLowerBound(bucket + 1) - 1;
+	}
+
+}
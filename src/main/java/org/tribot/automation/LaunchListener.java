@@ -0,0 +1,25 @@
+package org.tribot.automation;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Listens to the phases of client launches, ex. to find where a slow fleet start-up spends its time.
+ * See {@link LaunchMetrics} for per-host latency histograms.
+ * <p>
+ * This is called on the launching thread, so it should return quickly.
+ */
+@FunctionalInterface
+public interface LaunchListener {
+
+	/**
+	 * Called when a phase of a launch ends, successfully or not
+	 *
+	 * @param host the host the client is launched on, or {@code localhost} for local launches
+	 * @param phase the phase that ended
+	 * @param start when the phase started
+	 * @param duration how long the phase took
+	 */
+	void onPhase(String host, LaunchPhase phase, Instant start, Duration duration);
+
+}
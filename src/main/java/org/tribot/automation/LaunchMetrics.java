@@ -0,0 +1,52 @@
+package org.tribot.automation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects launch phase latencies into a histogram per host and phase, ex.
+ * {@code metrics.getHistogram("my-ssh-host", LaunchPhase.PID_WAIT).getPercentile(99)}
+ */
+public class LaunchMetrics implements LaunchListener {
+
+	private final Map<String, Map<LaunchPhase, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+	@Override
+	public void onPhase(String host, LaunchPhase phase, Instant start, Duration duration) {
+		getHistograms(host).get(phase).record(duration);
+	}
+
+	/**
+	 * @return the hosts that launches were recorded for
+	 */
+	public Set<String> getHosts() {
+		return Set.copyOf(histograms.keySet());
+	}
+
+	/**
+	 * Gets the latencies of a launch phase on a host
+	 *
+	 * @param host the host, or {@code localhost} for local launches
+	 * @param phase the launch phase
+	 * @return the latency histogram, empty if nothing was recorded
+	 */
+	public LatencyHistogram getHistogram(String host, LaunchPhase phase) {
+		final Map<LaunchPhase, LatencyHistogram> hostHistograms = histograms.get(host);
+		return hostHistograms != null ? hostHistograms.get(phase) : new LatencyHistogram();
+	}
+
+	private Map<LaunchPhase, LatencyHistogram> getHistograms(String host) {
+		return histograms.computeIfAbsent(host, h -> {
+			final Map<LaunchPhase, LatencyHistogram> hostHistograms = new EnumMap<>(LaunchPhase.class);
+			for (LaunchPhase phase : LaunchPhase.values()) {
+				hostHistograms.put(phase, new LatencyHistogram());
+			}
+			return hostHistograms;
+		});
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.tribot.automation;
+
+/**
+ * A phase of launching a client, reported to a {@link LaunchListener}
+ */
+public enum LaunchPhase {
+
+	/**
+	 * Fetching or revalidating the latest tribot-splash release
+	 */
+	RELEASE_CHECK,
+	/**
+	 * Checking the local tribot-splash.jar against the release, including waiting for the update lock
+	 */
+	HASH_CHECK,
+	/**
+	 * Downloading a new tribot-splash.jar
+	 */
+	DOWNLOAD,
+	/**
+	 * Checking the tribot-splash.jar on a remote host
+	 */
+	REMOTE_CHECK,
+	/**
+	 * Uploading tribot-splash.jar to a remote host
+	 */
+	UPLOAD,
+	/**
+	 * Starting the launcher process, locally, over ssh, or by starting the host's launcher agent if it isn't running
+	 */
+	PROCESS_START,
+	/**
+	 * Waiting for the launcher to report the client's process id
+	 */
+	PID_WAIT,
+	/**
+	 * Waiting for the launched client to connect to the automation server
+	 */
+	CONNECTION_WAIT,
+	/**
+	 * The whole launch
+	 */
+	TOTAL
+
+}
@@ -0,0 +1,76 @@
+package org.tribot.automation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Times the phases of a launch on a host for a {@link LaunchListener}
+ */
+@Slf4j
+class LaunchTimer {
+
+	static final String LOCAL_HOST = "localhost";
+	static final LaunchTimer NONE = new LaunchTimer(null, LOCAL_HOST);
+
+	// Null if nothing is listening
+	private final LaunchListener listener;
+	private final String host;
+
+	LaunchTimer(LaunchListener listener, String host) {
+		this.listener = listener;
+		this.host = host;
+	}
+
+	LaunchTimer forHost(String host) {
+		return new LaunchTimer(listener, host);
+	}
+
+	Span start(LaunchPhase phase) {
+		return new Span(phase);
+	}
+
+	<T, E extends Exception> T time(LaunchPhase phase, Phase<T, E> action) throws E {
+		final Span span = start(phase);
+		try {
+			return action.run();
+		}
+		finally {
+			span.end();
+		}
+	}
+
+	@FunctionalInterface
+	interface Phase<T, E extends Exception> {
+		T run() throws E;
+	}
+
+	class Span {
+
+		private final LaunchPhase phase;
+		private final Instant start = Instant.now();
+		private final long startNanos = System.nanoTime();
+		private boolean ended;
+
+		private Span(LaunchPhase phase) {
+			this.phase = phase;
+		}
+
+		// Only the first call is reported
+		void end() {
+			if (listener == null || ended) {
+				return;
+			}
+			ended = true;
+			try {
+				listener.onPhase(host, phase, start, Duration.ofNanos(System.nanoTime() - startNanos));
+			}
+			catch (Exception e) {
+				log.warn("Exception while processing launch listener", e);
+			}
+		}
+
+	}
+
+}
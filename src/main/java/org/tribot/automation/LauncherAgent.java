@@ -0,0 +1,191 @@
+package org.tribot.automation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Runs on a remote host and launches clients for the automation server, so remote launches don't pay for an ssh
+ * connection and a JVM start each. It is started once per host over ssh and connects back to the automation server,
+ * see {@link LauncherAgents}.
+ * <p>
+ * This only uses the JDK, so it can run from the library jar without the library's dependencies.
+ * Messages are space separated, url encoded fields:
+ * <ul>
+ *     <li>{@code launch <request id> <client id> <display> <command...>} from the server</li>
+ *     <li>{@code launched <request id> <pid>} or {@code failed <request id> <reason>} in reply</li>
+ *     <li>{@code exited <client id>} once a launched client's process exits</li>
+ * </ul>
+ */
+class LauncherAgent implements WebSocket.Listener {
+
+	static final String LAUNCH = "launch";
+	static final String LAUNCHED = "launched";
+	static final String FAILED = "failed";
+	static final String EXITED = "exited";
+
+	// The server only accepts an agent with the token it was started with, passed over ssh and never on the command line
+	static final String TOKEN_HEADER = "X-Automation-Agent-Token";
+	static final String TOKEN_ENV = "TRIBOT_AGENT_TOKEN";
+
+	static final Pattern LAUNCHED_PID_REGEX = Pattern.compile(".*tribotpid:(\\d+).*");
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+		final Thread thread = new Thread(r, "launcher-agent");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final CompletableFuture<Void> closed = new CompletableFuture<>();
+	// Only touched by the websocket's listener calls, which never overlap
+	private final StringBuilder partial = new StringBuilder();
+	private volatile WebSocket webSocket;
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: LauncherAgent <automation server url>");
+			System.exit(1);
+		}
+		// Runs until the server goes away, the server starts a new agent when it needs one
+		final String token = System.getenv(TOKEN_ENV);
+		if (token == null) {
+			System.err.println(TOKEN_ENV + " is not set");
+			System.exit(1);
+		}
+		connect(URI.create(args[0]), token).closed.exceptionally(e -> null).join();
+	}
+
+	static LauncherAgent connect(URI uri, String token) {
+		final LauncherAgent agent = new LauncherAgent();
+		HttpClient.newHttpClient()
+				.newWebSocketBuilder()
+				.header(TOKEN_HEADER, token)
+				.buildAsync(uri, agent)
+				.join();
+		return agent;
+	}
+
+	static String encode(List<String> fields) {
+		return fields.stream()
+				.map(field -> URLEncoder.encode(field, StandardCharsets.UTF_8))
+				.collect(Collectors.joining(" "));
+	}
+
+	static List<String> decode(String message) {
+		return Arrays.stream(message.split(" ", -1))
+				.map(field -> URLDecoder.decode(field, StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+	}
+
+	void close() {
+		final WebSocket webSocket = this.webSocket;
+		if (webSocket != null) {
+			webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+		}
+	}
+
+	@Override
+	public void onOpen(WebSocket webSocket) {
+		this.webSocket = webSocket;
+		webSocket.request(1);
+	}
+
+	@Override
+	public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+		partial.append(data);
+		if (last) {
+			final String message = partial.toString();
+			partial.setLength(0);
+			// Launches block on the launcher's output, don't hold up other messages
+			executor.execute(() -> handle(message));
+		}
+		webSocket.request(1);
+		return null;
+	}
+
+	@Override
+	public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+		closed.complete(null);
+		return null;
+	}
+
+	@Override
+	public void onError(WebSocket webSocket, Throwable error) {
+		closed.completeExceptionally(error);
+	}
+
+	private void handle(String message) {
+		final List<String> fields = decode(message);
+		if (fields.size() < 5 || !LAUNCH.equals(fields.get(0))) {
+			return;
+		}
+		final String requestId = fields.get(1);
+		try {
+			final long pid = launch(fields.get(2), fields.get(3), fields.subList(4, fields.size()));
+			send(LAUNCHED, requestId, Long.toString(pid));
+		}
+		catch (Exception e) {
+			send(FAILED, requestId, String.valueOf(e.getMessage()));
+		}
+	}
+
+	private long launch(String clientId, String display, List<String> command) throws IOException,
+	                                                                                  InterruptedException {
+		final ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+		if (!display.isEmpty()) {
+			builder.environment().put("DISPLAY", display);
+		}
+		final Process process = builder.start();
+		process.getOutputStream().close();
+		final BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		while ((line = output.readLine()) != null) {
+			final Matcher matcher = LAUNCHED_PID_REGEX.matcher(line);
+			if (matcher.matches()) {
+				final long pid = Long.parseLong(matcher.group(1));
+				executor.execute(() -> drain(output));
+				// The client is started by the launcher, not by us, so only its exit can be seen and not its code
+				ProcessHandle.of(pid).ifPresentOrElse(
+						handle -> handle.onExit().thenRun(() -> send(EXITED, clientId)),
+						() -> send(EXITED, clientId));
+				return pid;
+			}
+		}
+		output.close();
+		throw new IOException("Failed to find client after launch, launcher exited with " + process.waitFor());
+	}
+
+	private void drain(BufferedReader output) {
+		try (output) {
+			while (output.readLine() != null) {
+				// Keep reading so the launcher never blocks on a full pipe
+			}
+		}
+		catch (IOException ignored) {
+		}
+	}
+
+	private synchronized void send(String... fields) {
+		try {
+			webSocket.sendText(encode(Arrays.asList(fields)), true).join();
+		}
+		catch (Exception e) {
+			// The server is gone, it fails its pending launches itself
+		}
+	}
+
+}
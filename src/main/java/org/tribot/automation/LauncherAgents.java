@@ -0,0 +1,303 @@
+package org.tribot.automation;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.java_websocket.WebSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a {@link LauncherAgent} running on each remote host that launches through one, and sends it launches over
+ * its automation server connection instead of running each launch over a new ssh exec.
+ */
+@Slf4j
+class LauncherAgents {
+
+	// Agents connect with ids under this path, clients never do
+	private static final String ID_PREFIX = "agent/";
+	private static final String JAR_NAME = "tribot-automation-agent.jar";
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(60);
+	private static final Duration LAUNCH_TIMEOUT = Duration.ofSeconds(120);
+
+	private static final SecureRandom random = new SecureRandom();
+
+	private final AutomationServerImpl automationServer;
+
+	private final Map<String, WebSocket> connections = new ConcurrentHashMap<>();
+	// Agent ID -> completed once the agent connects
+	private final Map<String, CompletableFuture<Void>> pendingConnections = new ConcurrentHashMap<>();
+	// Agent ID -> lock held while starting the agent
+	private final Map<String, Object> startLocks = new ConcurrentHashMap<>();
+	private final Map<String, PendingLaunch> pendingLaunches = new ConcurrentHashMap<>();
+	// Agent ID -> the token the agent being started must connect with, removed once it is used
+	private final Map<String, String> tokens = new ConcurrentHashMap<>();
+	// Client ID -> the agent that launched it, the only one that may report its exit
+	private final Map<String, String> launchedClients = new ConcurrentHashMap<>();
+
+	LauncherAgents(AutomationServerImpl automationServer) {
+		this.automationServer = automationServer;
+	}
+
+	static boolean isAgent(String connectionId) {
+		return connectionId.startsWith(ID_PREFIX);
+	}
+
+	static String getAgentId(SshSettings settings) {
+		return ID_PREFIX + URLEncoder.encode(settings.getUsername() + "@" + settings.getHost() + ":" + settings.getPort(),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates the token the next agent for this id has to connect with, replacing any unused one
+	 */
+	String newToken(String agentId) {
+		final byte[] token = new byte[32];
+		random.nextBytes(token);
+		final String encoded = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+		tokens.put(agentId, encoded);
+		return encoded;
+	}
+
+	/**
+	 * Checks an agent's handshake. Each token is only accepted once, by the agent started with it.
+	 *
+	 * @return true if the connection is the agent that was started for this id
+	 */
+	boolean accept(String agentId, String token) {
+		final String expected = tokens.get(agentId);
+		if (expected == null || token == null || connections.containsKey(agentId)
+		    || !MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+				token.getBytes(StandardCharsets.UTF_8))) {
+			log.warn("Rejected launcher agent connection for {}", agentId);
+			return false;
+		}
+		return tokens.remove(agentId, expected);
+	}
+
+	/**
+	 * Launches a client through the host's agent, starting the agent first if it isn't running
+	 *
+	 * @return the launched client's process id
+	 */
+	long launch(SshSettings settings, SshSessionPool sessions, String clientId, List<String> command,
+	            LaunchTimer timer) throws Exception {
+		final String agentId = timer.time(LaunchPhase.PROCESS_START, () -> start(settings, sessions));
+		final WebSocket connection = connections.get(agentId);
+		if (connection == null) {
+			throw new LaunchException("Launcher agent disconnected: " + agentId);
+		}
+		final String requestId = UUID.randomUUID().toString();
+		final List<String> fields = new ArrayList<>(List.of(LauncherAgent.LAUNCH, requestId, clientId,
+				settings.getDisplay() != null ? settings.getDisplay() : ""));
+		fields.addAll(command);
+		final PendingLaunch launch = new PendingLaunch(agentId, clientId, new CompletableFuture<>());
+		pendingLaunches.put(requestId, launch);
+		try {
+			log.debug("Launching client {} through launcher agent {}", clientId, agentId);
+			connection.send(LauncherAgent.encode(fields));
+			return timer.time(LaunchPhase.PID_WAIT,
+					() -> launch.getPid().get(LAUNCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+		}
+		catch (ExecutionException e) {
+			throw e.getCause() instanceof LaunchException ? (LaunchException) e.getCause() : e;
+		}
+		finally {
+			pendingLaunches.remove(requestId);
+		}
+	}
+
+	void onOpen(String agentId, WebSocket connection) {
+		// Never replace a connected agent, the running one keeps its launches
+		if (connections.putIfAbsent(agentId, connection) != null) {
+			log.warn("Rejected duplicate launcher agent connection for {}", agentId);
+			connection.close();
+			return;
+		}
+		log.debug("Launcher agent connected: {}", agentId);
+		final CompletableFuture<Void> pending = pendingConnections.get(agentId);
+		if (pending != null) {
+			pending.complete(null);
+		}
+	}
+
+	void onClose(String agentId, WebSocket connection) {
+		if (!connections.remove(agentId, connection)) {
+			return;
+		}
+		log.debug("Launcher agent disconnected: {}", agentId);
+		// Exits of its clients can't be seen anymore
+		launchedClients.values().removeIf(agentId::equals);
+		pendingLaunches.values()
+				.stream()
+				.filter(launch -> launch.getAgentId().equals(agentId))
+				.forEach(launch -> launch.getPid()
+						.completeExceptionally(new LaunchException("Launcher agent disconnected: " + agentId)));
+	}
+
+	void onMessage(String agentId, String message) {
+		final List<String> fields = LauncherAgent.decode(message);
+		switch (fields.get(0)) {
+			case LauncherAgent.LAUNCHED: {
+				final PendingLaunch launch = getLaunch(agentId, fields, message);
+				if (launch == null) {
+					break;
+				}
+				final long pid;
+				try {
+					pid = Long.parseLong(fields.get(2));
+				}
+				catch (NumberFormatException e) {
+					launch.getPid().completeExceptionally(new LaunchException("Launcher agent " + agentId
+					                                                          + " reported an invalid pid: "
+					                                                          + fields.get(2)));
+					break;
+				}
+				if (pid <= 0) {
+					launch.getPid().completeExceptionally(new LaunchException("Launcher agent " + agentId
+					                                                          + " reported an invalid pid: " + pid));
+					break;
+				}
+				launchedClients.put(launch.getClientId(), agentId);
+				launch.getPid().complete(pid);
+				break;
+			}
+			case LauncherAgent.FAILED: {
+				final PendingLaunch launch = getLaunch(agentId, fields, message);
+				if (launch != null) {
+					launch.getPid().completeExceptionally(new LaunchException(fields.get(2)));
+				}
+				break;
+			}
+			case LauncherAgent.EXITED:
+				if (fields.size() != 2) {
+					log.warn("Ignoring malformed message from launcher agent {}: {}", agentId, message);
+				}
+				else if (launchedClients.remove(fields.get(1), agentId)) {
+					automationServer.sendEvent(fields.get(1), new ProcessExitEvent());
+				}
+				else {
+					log.warn("Ignoring exit of {} from launcher agent {}, which did not launch it", fields.get(1),
+							agentId);
+				}
+				break;
+			default:
+				log.debug("Ignoring unknown message from launcher agent {}: {}", agentId, message);
+		}
+	}
+
+	// The launch a launched or failed message answers, failed if the message is malformed. Null if it isn't this agent's.
+	private PendingLaunch getLaunch(String agentId, List<String> fields, String message) {
+		final PendingLaunch launch = fields.size() > 1 ? pendingLaunches.get(fields.get(1)) : null;
+		if (launch == null || !launch.getAgentId().equals(agentId)) {
+			// Also answers to launches that already timed out
+			log.debug("Ignoring message for an unknown launch from launcher agent {}: {}", agentId, message);
+			return null;
+		}
+		if (fields.size() != 3) {
+			launch.getPid().completeExceptionally(new LaunchException("Malformed message from launcher agent "
+			                                                          + agentId + ": " + message));
+			return null;
+		}
+		return launch;
+	}
+
+	void close() {
+		connections.values().forEach(WebSocket::close);
+	}
+
+	private String start(SshSettings settings, SshSessionPool sessions) throws Exception {
+		final String agentId = getAgentId(settings);
+		// Launches to a host without an agent wait for one to start instead of each starting their own
+		synchronized (startLocks.computeIfAbsent(agentId, id -> new Object())) {
+			if (connections.containsKey(agentId)) {
+				return agentId;
+			}
+			final CompletableFuture<Void> connected = new CompletableFuture<>();
+			pendingConnections.put(agentId, connected);
+			try {
+				deploy(settings, sessions, agentId);
+				connected.get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException e) {
+				throw new LaunchException("Launcher agent on " + settings.getHost() + " did not connect");
+			}
+			finally {
+				pendingConnections.remove(agentId);
+				tokens.remove(agentId);
+			}
+		}
+		return agentId;
+	}
+
+	// Uploads the library jar and starts the agent from it, detached so it outlives the ssh channel
+	private void deploy(SshSettings settings, SshSessionPool sessions, String agentId) throws Exception {
+		final Path jar = Path.of(LauncherAgent.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		if (!Files.isRegularFile(jar)) {
+			throw new LaunchException("The launcher agent can only be started when this library is run from a jar, "
+			                          + "found " + jar);
+		}
+		log.debug("Starting launcher agent on {}", settings.getHost());
+		try (final SshSessionPool.Lease lease = sessions.lease(settings)) {
+			final Session session = lease.getSession();
+			final String remotePath = TribotSplash.exec(session, "echo ~").trim() + "/" + JAR_NAME;
+			final ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+			try {
+				sftp.connect();
+				sftp.put(jar.toString(), remotePath);
+			}
+			finally {
+				sftp.disconnect();
+			}
+			final String url = automationServer.getConnectionUrl(agentId, false, WireFormat.JSON);
+			final String token = newToken(agentId);
+			// The token is read from stdin into the agent's environment, so it never shows up in the process list
+			execWithInput(session, "read -r token && " + LauncherAgent.TOKEN_ENV + "=\"$token\" nohup java -cp \""
+			                       + remotePath + "\" " + LauncherAgent.class.getName() + " \"" + url
+			                       + "\" > /dev/null 2>&1 &", token + "\n");
+		}
+	}
+
+	private static void execWithInput(Session session, String command, String input) throws JSchException,
+	                                                                                         IOException {
+		final ChannelExec channel = (ChannelExec) session.openChannel("exec");
+		try {
+			channel.setCommand(command);
+			final InputStream output = channel.getInputStream();
+			final OutputStream stdin = channel.getOutputStream();
+			channel.connect();
+			stdin.write(input.getBytes(StandardCharsets.UTF_8));
+			stdin.close();
+			output.readAllBytes();
+		}
+		finally {
+			channel.disconnect();
+		}
+	}
+
+	@Value
+	private static class PendingLaunch {
+		private final String agentId;
+		private final String clientId;
+		private final CompletableFuture<Long> pid;
+	}
+
+}
@@ -0,0 +1,325 @@
+package org.tribot.automation;
+
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * A minimal MessagePack codec for json trees, used by connections that negotiated the binary wire format.
+ * Integral numbers are written with the smallest integer encoding, so inventory pairs, stat maps and positions
+ * mostly take a single byte per number. Binary values are read as base64 strings so they bind the same way
+ * the json format does.
+ */
+final class MessagePack {
+
+	private MessagePack() {
+	}
+
+	static byte[] encode(JsonElement element) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			write(out, element);
+		}
+		catch (IOException e) {
+			// In-memory stream, this can't happen
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	static JsonElement decode(ByteBuffer buffer) {
+		try {
+			return read(buffer);
+		}
+		catch (RuntimeException e) {
+			throw new JsonParseException("Invalid MessagePack frame", e);
+		}
+	}
+
+	private static void write(DataOutputStream out, JsonElement element) throws IOException {
+		if (element == null || element.isJsonNull()) {
+			out.writeByte(0xc0);
+		}
+		else if (element.isJsonObject()) {
+			final JsonObject object = element.getAsJsonObject();
+			writeHeader(out, object.size(), 0x80, 0xde, 0xdf);
+			for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+				writeString(out, entry.getKey());
+				write(out, entry.getValue());
+			}
+		}
+		else if (element.isJsonArray()) {
+			final JsonArray array = element.getAsJsonArray();
+			writeHeader(out, array.size(), 0x90, 0xdc, 0xdd);
+			for (JsonElement value : array) {
+				write(out, value);
+			}
+		}
+		else {
+			final JsonPrimitive primitive = element.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				out.writeByte(primitive.getAsBoolean() ? 0xc3 : 0xc2);
+			}
+			else if (primitive.isNumber()) {
+				writeNumber(out, primitive.getAsNumber());
+			}
+			else {
+				writeString(out, primitive.getAsString());
+			}
+		}
+	}
+
+	private static void writeHeader(DataOutputStream out, int size, int fix, int marker16, int marker32)
+			throws IOException {
+		if (size < 16) {
+			out.writeByte(fix | size);
+		}
+		else if (size <= 0xffff) {
+			out.writeByte(marker16);
+			out.writeShort(size);
+		}
+		else {
+			out.writeByte(marker32);
+			out.writeInt(size);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length < 32) {
+			out.writeByte(0xa0 | bytes.length);
+		}
+		else if (bytes.length <= 0xff) {
+			out.writeByte(0xd9);
+			out.writeByte(bytes.length);
+		}
+		else if (bytes.length <= 0xffff) {
+			out.writeByte(0xda);
+			out.writeShort(bytes.length);
+		}
+		else {
+			out.writeByte(0xdb);
+			out.writeInt(bytes.length);
+		}
+		out.write(bytes);
+	}
+
+	private static void writeNumber(DataOutputStream out, Number number) throws IOException {
+		if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+			writeInteger(out, number.longValue());
+			return;
+		}
+		if (number instanceof LazilyParsedNumber || number instanceof BigDecimal || number instanceof BigInteger) {
+			try {
+				writeInteger(out, new BigDecimal(number.toString()).longValueExact());
+				return;
+			}
+			catch (ArithmeticException ignored) {
+				// Not integral, or out of range, written as a double below
+			}
+		}
+		final double value = number.doubleValue();
+		if (value == Math.rint(value) && Math.abs(value) < 0x1p53) {
+			writeInteger(out, (long) value);
+		}
+		else {
+			out.writeByte(0xcb);
+			out.writeDouble(value);
+		}
+	}
+
+	private static void writeInteger(DataOutputStream out, long value) throws IOException {
+		if (value >= 0) {
+			if (value < 0x80) {
+				out.writeByte((int) value);
+			}
+			else if (value <= 0xff) {
+				out.writeByte(0xcc);
+				out.writeByte((int) value);
+			}
+			else if (value <= 0xffff) {
+				out.writeByte(0xcd);
+				out.writeShort((int) value);
+			}
+			else if (value <= 0xffffffffL) {
+				out.writeByte(0xce);
+				out.writeInt((int) value);
+			}
+			else {
+				out.writeByte(0xcf);
+				out.writeLong(value);
+			}
+		}
+		else if (value >= -32) {
+			out.writeByte((int) value);
+		}
+		else if (value >= Byte.MIN_VALUE) {
+			out.writeByte(0xd0);
+			out.writeByte((int) value);
+		}
+		else if (value >= Short.MIN_VALUE) {
+			out.writeByte(0xd1);
+			out.writeShort((int) value);
+		}
+		else if (value >= Integer.MIN_VALUE) {
+			out.writeByte(0xd2);
+			out.writeInt((int) value);
+		}
+		else {
+			out.writeByte(0xd3);
+			out.writeLong(value);
+		}
+	}
+
+	private static JsonElement read(ByteBuffer in) {
+		final int marker = in.get() & 0xff;
+		if (marker <= 0x7f) {
+			return new JsonPrimitive(marker);
+		}
+		if (marker <= 0x8f) {
+			return readMap(in, marker & 0x0f);
+		}
+		if (marker <= 0x9f) {
+			return readArray(in, marker & 0x0f);
+		}
+		if (marker <= 0xbf) {
+			return readString(in, marker & 0x1f);
+		}
+		if (marker >= 0xe0) {
+			return new JsonPrimitive((byte) marker);
+		}
+		switch (marker) {
+			case 0xc0:
+				return JsonNull.INSTANCE;
+			case 0xc2:
+				return new JsonPrimitive(false);
+			case 0xc3:
+				return new JsonPrimitive(true);
+			case 0xc4:
+				return readBinary(in, in.get() & 0xff);
+			case 0xc5:
+				return readBinary(in, in.getShort() & 0xffff);
+			case 0xc6:
+				return readBinary(in, in.getInt());
+			case 0xc7:
+				return skipExtension(in, in.get() & 0xff);
+			case 0xc8:
+				return skipExtension(in, in.getShort() & 0xffff);
+			case 0xc9:
+				return skipExtension(in, in.getInt());
+			case 0xca:
+				return new JsonPrimitive(in.getFloat());
+			case 0xcb:
+				return new JsonPrimitive(in.getDouble());
+			case 0xcc:
+				return new JsonPrimitive(in.get() & 0xff);
+			case 0xcd:
+				return new JsonPrimitive(in.getShort() & 0xffff);
+			case 0xce:
+				return new JsonPrimitive(in.getInt() & 0xffffffffL);
+			case 0xcf:
+				final long unsigned = in.getLong();
+				return new JsonPrimitive(unsigned >= 0
+				                         ? BigInteger.valueOf(unsigned)
+				                         : BigInteger.valueOf(unsigned).add(BigInteger.ONE.shiftLeft(64)));
+			case 0xd0:
+				return new JsonPrimitive(in.get());
+			case 0xd1:
+				return new JsonPrimitive(in.getShort());
+			case 0xd2:
+				return new JsonPrimitive(in.getInt());
+			case 0xd3:
+				return new JsonPrimitive(in.getLong());
+			case 0xd4:
+				return skipExtension(in, 1);
+			case 0xd5:
+				return skipExtension(in, 2);
+			case 0xd6:
+				return skipExtension(in, 4);
+			case 0xd7:
+				return skipExtension(in, 8);
+			case 0xd8:
+				return skipExtension(in, 16);
+			case 0xd9:
+				return readString(in, in.get() & 0xff);
+			case 0xda:
+				return readString(in, in.getShort() & 0xffff);
+			case 0xdb:
+				return readString(in, in.getInt());
+			case 0xdc:
+				return readArray(in, in.getShort() & 0xffff);
+			case 0xdd:
+				return readArray(in, in.getInt());
+			case 0xde:
+				return readMap(in, in.getShort() & 0xffff);
+			case 0xdf:
+				return readMap(in, in.getInt());
+			default:
+				throw new IllegalArgumentException("Unknown MessagePack marker: " + marker);
+		}
+	}
+
+	private static JsonElement readMap(ByteBuffer in, int size) {
+		final JsonObject object = new JsonObject();
+		for (int i = 0; i < size; i++) {
+			final JsonElement key = read(in);
+			object.add(key.isJsonNull() ? "null" : key.getAsString(), read(in));
+		}
+		return object;
+	}
+
+	private static JsonElement readArray(ByteBuffer in, int size) {
+		final JsonArray array = new JsonArray(Math.min(size, in.remaining()));
+		for (int i = 0; i < size; i++) {
+			array.add(read(in));
+		}
+		return array;
+	}
+
+	private static JsonElement readString(ByteBuffer in, int length) {
+		checkRemaining(in, length);
+		final String string;
+		if (in.hasArray()) {
+			string = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+			in.position(in.position() + length);
+		}
+		else {
+			final byte[] bytes = new byte[length];
+			in.get(bytes);
+			string = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return new JsonPrimitive(string);
+	}
+
+	private static JsonElement readBinary(ByteBuffer in, int length) {
+		checkRemaining(in, length);
+		final ByteBuffer slice = in.slice();
+		slice.limit(length);
+		in.position(in.position() + length);
+		return new JsonPrimitive(StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(slice)).toString());
+	}
+
+	private static void checkRemaining(ByteBuffer in, int length) {
+		if (length < 0 || length > in.remaining()) {
+			throw new BufferUnderflowException();
+		}
+	}
+
+	private static JsonElement skipExtension(ByteBuffer in, int length) {
+		// Extension type byte, then the payload
+		in.position(in.position() + 1 + length);
+		return JsonNull.INSTANCE;
+	}
+
+}
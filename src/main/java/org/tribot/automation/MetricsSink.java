@@ -0,0 +1,70 @@
+package org.tribot.automation;
+
+import java.time.Duration;
+
+/**
+ * Receives measurements of an automation server's traffic, ex. {@link InMemoryMetrics} or an adapter to a metrics
+ * library. Every method does nothing by default, so a sink only implements what it needs.
+ * <p>
+ * These are called on the websocket and request threads, so they must be thread safe and return quickly.
+ */
+public interface MetricsSink {
+
+	/**
+	 * Called when a request is sent to a client
+	 *
+	 * @param clientId the client id
+	 * @param method the JSON-RPC method name
+	 */
+	default void onRequestSent(String clientId, String method) {
+	}
+
+	/**
+	 * Called when a request to a client ends
+	 *
+	 * @param clientId the client id
+	 * @param method the JSON-RPC method name
+	 * @param latency the time from sending the request until it ended
+	 * @param outcome how the request ended
+	 */
+	default void onRequestCompleted(String clientId, String method, Duration latency, RequestOutcome outcome) {
+	}
+
+	/**
+	 * Called when a frame is sent to a client
+	 *
+	 * @param clientId the client id
+	 * @param method the JSON-RPC method name, or null if the frame isn't a request (ex. a response to a script request).
+	 * A batch frame is split evenly between its requests.
+	 * @param bytes the size of the frame
+	 */
+	default void onBytesSent(String clientId, String method, long bytes) {
+	}
+
+	/**
+	 * Called when a frame is received from a client
+	 *
+	 * @param clientId the client id
+	 * @param bytes the size of the frame
+	 */
+	default void onBytesReceived(String clientId, long bytes) {
+	}
+
+	/**
+	 * Called when an event starts being handled by its listeners
+	 *
+	 * @param clientId the client id
+	 * @param lag the time from receiving the event until its listeners started handling it
+	 */
+	default void onEventDispatched(String clientId, Duration lag) {
+	}
+
+	/**
+	 * Called when a disconnected client is forgotten, so per-client measurements can be dropped
+	 *
+	 * @param clientId the client id
+	 */
+	default void onClientRemoved(String clientId) {
+	}
+
+}
@@ -0,0 +1,29 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * A point in time copy of {@link InMemoryMetrics}
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class MetricsSnapshot {
+
+	/**
+	 * The stats of each JSON-RPC method, by method name
+	 */
+	private final Map<String, RpcStats> methods;
+	/**
+	 * The stats of each client, by client id
+	 */
+	private final Map<String, RpcStats> clients;
+	/**
+	 * The stats of all clients together
+	 */
+	private final RpcStats fleet;
+
+}
@@ -0,0 +1,4 @@
+package org.tribot.automation;
+
+class ProcessExitEvent implements AutomationEvent {
+}
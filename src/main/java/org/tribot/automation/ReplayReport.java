@@ -0,0 +1,41 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * The result of a {@link TrafficReplay}
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class ReplayReport {
+
+	/**
+	 * From the first replayed record until every replayed request completed
+	 */
+	private final Duration elapsed;
+	/**
+	 * The number of recorded server requests that were replayed
+	 */
+	private final long requests;
+	/**
+	 * Replayed requests that failed or timed out
+	 */
+	private final long failures;
+	/**
+	 * The server's request latencies and traffic during the replay
+	 */
+	private final MetricsSnapshot metrics;
+
+	/**
+	 * @return the requests completed per second over the whole replay
+	 */
+	public double getRequestsPerSecond() {
+		final long millis = elapsed.toMillis();
+		return millis == 0 ? 0 : requests * 1000.0 / millis;
+	}
+
+}
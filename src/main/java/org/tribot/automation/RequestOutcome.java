@@ -0,0 +1,21 @@
+package org.tribot.automation;
+
+/**
+ * How a request to a client ended, see {@link MetricsSink}
+ */
+public enum RequestOutcome {
+
+	/**
+	 * The client responded with a result
+	 */
+	SUCCESS,
+	/**
+	 * The client responded with an error, or the request could not be sent
+	 */
+	ERROR,
+	/**
+	 * The client did not respond before the request's deadline
+	 */
+	TIMEOUT
+
+}
@@ -0,0 +1,24 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.Value;
+
+/**
+ * A decoded inbound JSON-RPC message. Requests and notifications have a method, responses have a result or error.
+ * The params and result are kept as json trees so they are only bound to a type by whoever consumes them.
+ */
+@Value
+class RpcMessage {
+
+	private final String id;
+	private final String method;
+	private final JsonElement params;
+	private final JsonElement result;
+	private final JsonObject error;
+
+	boolean isRequest() {
+		return method != null;
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Single pass decoder for inbound frames. A frame is streamed once, the envelope fields are read directly and only
+ * the params/result/error values are materialized as json trees. Results nobody is waiting for anymore are skipped
+ * without being built at all.
+ */
+final class RpcMessageReader {
+
+	private RpcMessageReader() {
+	}
+
+	/**
+	 * Reads a frame, which is either a single message or a batch array of messages
+	 *
+	 * @param frame the text frame
+	 * @param isPending checks if a response id still has a caller waiting for it
+	 * @param consumer receives every decoded message, in order
+	 * @throws IOException if the frame is not valid json
+	 */
+	static void read(String frame, Predicate<String> isPending, Consumer<RpcMessage> consumer) throws IOException {
+		read(new StringReader(frame), isPending, consumer);
+	}
+
+	static void read(Reader frame, Predicate<String> isPending, Consumer<RpcMessage> consumer) throws IOException {
+		try (final JsonReader reader = new JsonReader(frame)) {
+			final JsonToken token = reader.peek();
+			if (token == JsonToken.BEGIN_OBJECT) {
+				consumer.accept(readMessage(reader, isPending));
+			}
+			else if (token == JsonToken.BEGIN_ARRAY) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+						consumer.accept(readMessage(reader, isPending));
+					}
+					else {
+						reader.skipValue();
+					}
+				}
+				reader.endArray();
+			}
+		}
+	}
+
+	/**
+	 * Reads a frame that was already decoded into a json tree, such as a binary frame
+	 *
+	 * @param frame the decoded frame
+	 * @param consumer receives every decoded message, in order
+	 */
+	static void read(JsonElement frame, Consumer<RpcMessage> consumer) {
+		if (frame.isJsonObject()) {
+			consumer.accept(readMessage(frame.getAsJsonObject()));
+		}
+		else if (frame.isJsonArray()) {
+			for (JsonElement element : frame.getAsJsonArray()) {
+				if (element.isJsonObject()) {
+					consumer.accept(readMessage(element.getAsJsonObject()));
+				}
+			}
+		}
+	}
+
+	private static RpcMessage readMessage(JsonObject message) {
+		final JsonElement error = message.get("error");
+		return new RpcMessage(getString(message, "id"),
+				getString(message, "method"),
+				message.get("params"),
+				message.get("result"),
+				error != null && error.isJsonObject() ? error.getAsJsonObject() : null);
+	}
+
+	private static String getString(JsonObject message, String name) {
+		final JsonElement element = message.get(name);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+	}
+
+	private static RpcMessage readMessage(JsonReader reader, Predicate<String> isPending) throws IOException {
+		String id = null;
+		String method = null;
+		JsonElement params = null;
+		JsonElement result = null;
+		JsonObject error = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "id":
+					id = readString(reader);
+					break;
+				case "method":
+					method = readString(reader);
+					break;
+				case "params":
+					params = JsonParser.parseReader(reader);
+					break;
+				case "result":
+					// Peers write the id first, so a late response can be dropped without building its result
+					if (id != null && !isPending.test(id)) {
+						reader.skipValue();
+					}
+					else {
+						result = JsonParser.parseReader(reader);
+					}
+					break;
+				case "error":
+					final JsonElement element = JsonParser.parseReader(reader);
+					error = element.isJsonObject() ? element.getAsJsonObject() : null;
+					break;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return new RpcMessage(id, method, params, result, error);
+	}
+
+	private static String readString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		// Numbers are read as strings, ids are only ever compared
+		return reader.nextString();
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+/**
+ * Request counts, bytes and latencies for a method, a client, or a whole fleet, see {@link InMemoryMetrics}
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class RpcStats {
+
+	/**
+	 * The number of requests sent
+	 */
+	private final long requests;
+	/**
+	 * The number of requests sent that haven't ended yet
+	 */
+	private final long inFlight;
+	/**
+	 * The number of requests that ended with an error
+	 */
+	private final long errors;
+	/**
+	 * The number of requests that timed out
+	 */
+	private final long timeouts;
+	/**
+	 * The number of bytes sent
+	 */
+	private final long bytesSent;
+	/**
+	 * The number of bytes received. Received frames aren't attributed to a method, so this is 0 for a method.
+	 */
+	private final long bytesReceived;
+	/**
+	 * The latencies of requests that ended
+	 */
+	private final LatencyHistogram latency;
+	/**
+	 * The time events waited before their listeners handled them. Empty for a method.
+	 */
+	private final LatencyHistogram eventLag;
+
+	/**
+	 * Gets the ratio of ended requests that timed out
+	 *
+	 * @return the timeout rate between 0 and 1, or 0 if no request ended yet
+	 */
+	public double getTimeoutRate() {
+		final long completed = latency.getCount();
+		return completed == 0 ? 0 : (double) timeouts / completed;
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.tribot.automation;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Decodes encoded screenshots straight from the received buffer, optionally into a caller supplied image
+ */
+final class ScreenshotCodec {
+
+	private ScreenshotCodec() {
+	}
+
+	/**
+	 * Decodes an encoded image
+	 *
+	 * @param encoded the encoded image, this buffer is not modified
+	 * @param destination an image to decode into, or null. It is only used if it has the same size and type as the
+	 *                    encoded image, otherwise a new image is allocated.
+	 * @return the decoded image, which is the destination if it was used, or null if the format is not supported
+	 * @throws IOException if the image could not be decoded
+	 */
+	static BufferedImage decode(ByteBuffer encoded, BufferedImage destination) throws IOException {
+		// Memory cache, the default ImageIO stream caches to a temp file
+		try (final ImageInputStream input = new MemoryCacheImageInputStream(new ByteBufferInputStream(encoded.duplicate()))) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				final ImageReadParam param = reader.getDefaultReadParam();
+				if (destination != null && isCompatible(reader, destination)) {
+					param.setDestination(destination);
+				}
+				return reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	static byte[] toByteArray(ByteBuffer encoded) {
+		final ByteBuffer buffer = encoded.duplicate();
+		if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+				&& buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static boolean isCompatible(ImageReader reader, BufferedImage destination) throws IOException {
+		if (destination.getWidth() != reader.getWidth(0) || destination.getHeight() != reader.getHeight(0)) {
+			return false;
+		}
+		final Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+		while (types.hasNext()) {
+			final ImageTypeSpecifier type = types.next();
+			final boolean compatible = destination.getType() != BufferedImage.TYPE_CUSTOM
+			                           ? type.getBufferedImageType() == destination.getType()
+			                           : type.getColorModel().equals(destination.getColorModel());
+			if (compatible) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return len == 0 ? 0 : -1;
+			}
+			final int read = Math.min(len, buffer.remaining());
+			buffer.get(b, off, read);
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+
+	}
+
+}
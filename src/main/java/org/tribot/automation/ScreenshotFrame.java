@@ -0,0 +1,39 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A frame delivered by a screenshot stream, see {@link AutomationClient#streamScreenshots}
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class ScreenshotFrame {
+
+	/**
+	 * The full game client image. The same image is updated in place for every frame of a subscription, so copy
+	 * it if it needs to be kept after the consumer returns.
+	 */
+	private final BufferedImage image;
+
+	/**
+	 * The area of the image that changed since the previous frame delivered to this subscription. Frames dropped
+	 * for rate limiting are merged into this region.
+	 */
+	private final Rectangle changedRegion;
+
+	/**
+	 * The sequence number of the latest client frame included in this image. Gaps mean frames were merged.
+	 */
+	private final long sequence;
+
+	/**
+	 * The time this frame was delivered, in epoch millis
+	 */
+	private final long timestamp;
+
+}
@@ -0,0 +1,72 @@
+package org.tribot.automation;
+
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A frame pushed by a client's screenshot stream. The first frame, and any frame after the client resizes, is a
+ * key frame covering the whole image. Other frames only carry the regions that changed.
+ * <p>
+ * Clients with attachment support send frames as {@link AttachmentFrame#KIND_SCREENSHOT_FRAME} attachments, with
+ * the payload: int sequence, short width, short height, byte flags (bit 0 = key frame), short region count, then
+ * per region: short x, short y, short width, short height, int length and the encoded (png) region. Other clients
+ * send it as a json event with base64 region data.
+ */
+@Value
+class ScreenshotFrameEvent implements AutomationEvent {
+
+	private static final int KEY_FRAME_FLAG = 1;
+
+	private final String streamId;
+	private final long sequence;
+	private final int width;
+	private final int height;
+	private final boolean keyFrame;
+	private final List<Region> regions;
+
+	static ScreenshotFrameEvent read(String streamId, ByteBuffer payload) {
+		final ByteBuffer in = payload.duplicate();
+		final long sequence = in.getInt() & 0xffffffffL;
+		final int width = in.getShort() & 0xffff;
+		final int height = in.getShort() & 0xffff;
+		final boolean keyFrame = (in.get() & KEY_FRAME_FLAG) != 0;
+		final int regionCount = in.getShort() & 0xffff;
+		final List<Region> regions = new ArrayList<>(regionCount);
+		for (int i = 0; i < regionCount; i++) {
+			final int x = in.getShort() & 0xffff;
+			final int y = in.getShort() & 0xffff;
+			final int regionWidth = in.getShort() & 0xffff;
+			final int regionHeight = in.getShort() & 0xffff;
+			final int length = in.getInt();
+			final ByteBuffer encoded = in.slice();
+			encoded.limit(length);
+			in.position(in.position() + length);
+			regions.add(new Region(x, y, regionWidth, regionHeight, null, encoded));
+		}
+		return new ScreenshotFrameEvent(streamId, sequence, width, height, keyFrame, regions);
+	}
+
+	@Value
+	static class Region {
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		// Base64 png, json frames only
+		private final String data;
+		// Raw png, attachment frames only
+		private final transient ByteBuffer encoded;
+
+		ByteBuffer getEncoded() {
+			if (encoded != null) {
+				return encoded;
+			}
+			return data == null ? null : ByteBuffer.wrap(Base64.getDecoder().decode(data));
+		}
+	}
+
+}
@@ -0,0 +1,291 @@
+package org.tribot.automation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The server side of a client's screenshot stream. Frames pushed by the client are composed into one image, and
+ * each subscriber gets its own copy of that image, updated only where it changed and at most at its own frame rate.
+ * A subscriber that is still busy, or not due yet, has the pending changes merged into its next frame instead of
+ * having frames queued for it.
+ */
+@Slf4j
+class ScreenshotStream {
+
+	// Sequence numbers are unsigned ints on the wire
+	private static final long SEQUENCE_MASK = 0xffffffffL;
+
+	private final AutomationServerImpl automationServer;
+	private final String clientId;
+	private final String streamId = UUID.randomUUID().toString();
+	private final ScheduledExecutorService scheduler;
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	// Guarded by this
+	private BufferedImage image;
+	private long sequence;
+	private int requestedFps;
+	private boolean keyFrameRequested;
+
+	ScreenshotStream(AutomationServerImpl automationServer, String clientId, ScheduledExecutorService scheduler) {
+		this.automationServer = automationServer;
+		this.clientId = clientId;
+		this.scheduler = scheduler;
+		automationServer.onEvent(clientId, ScreenshotFrameEvent.class, this::onFrame);
+	}
+
+	Subscription subscribe(int fps, Consumer<ScreenshotFrame> consumer) throws AutomationException {
+		if (fps <= 0) {
+			throw new IllegalArgumentException("fps must be positive: " + fps);
+		}
+		final Subscriber subscriber = new Subscriber(fps, consumer);
+		final CompletableFuture<Void> started;
+		synchronized (this) {
+			subscribers.add(subscriber);
+			started = updateRate();
+			if (image != null) {
+				// Nothing may change for a while, give the new subscriber what we have
+				subscriber.changed(new Rectangle(image.getWidth(), image.getHeight()));
+			}
+		}
+		// Never wait while holding the lock, frames are composed under it and would stall this client's events
+		try {
+			automationServer.await(started);
+		}
+		catch (AutomationException e) {
+			subscriber.close();
+			throw e;
+		}
+		return subscriber;
+	}
+
+	void restart() {
+		final CompletableFuture<Void> restarted;
+		synchronized (this) {
+			if (requestedFps == 0) {
+				return;
+			}
+			image = null;
+			requestedFps = 0;
+			restarted = updateRate();
+		}
+		restarted.whenComplete((v, e) -> {
+			if (e != null) {
+				log.warn("Failed to restart screenshot stream for {}", clientId, e);
+			}
+		});
+	}
+
+	void close() {
+		subscribers.forEach(Subscriber::close);
+	}
+
+	private void unsubscribe(Subscriber subscriber) {
+		final CompletableFuture<Void> updated;
+		synchronized (this) {
+			if (!subscribers.remove(subscriber)) {
+				return;
+			}
+			updated = updateRate();
+		}
+		updated.whenComplete((v, e) -> {
+			if (e != null) {
+				log.debug("Failed to update screenshot stream for {}", clientId, e);
+			}
+		});
+	}
+
+	// Guarded by this. The client pushes at the fastest rate any subscriber wants, slower subscribers merge frames.
+	private CompletableFuture<Void> updateRate() {
+		final int fps = subscribers.stream().mapToInt(s -> s.fps).max().orElse(0);
+		if (fps == requestedFps) {
+			return CompletableFuture.completedFuture(null);
+		}
+		requestedFps = fps;
+		final AsyncAutomationClientImpl client = new AsyncAutomationClientImpl(automationServer, clientId);
+		if (fps == 0) {
+			image = null;
+			return client.stopScreenshotStream(streamId);
+		}
+		return client.startScreenshotStream(streamId, fps);
+	}
+
+	private void onFrame(ScreenshotFrameEvent frame) {
+		if (!streamId.equals(frame.getStreamId())) {
+			return;
+		}
+		final Rectangle changed;
+		synchronized (this) {
+			if (requestedFps == 0) {
+				return;
+			}
+			final boolean matches = image != null
+					&& image.getWidth() == frame.getWidth() && image.getHeight() == frame.getHeight();
+			if (!frame.isKeyFrame()) {
+				if (!matches || frame.getSequence() != ((sequence + 1) & SEQUENCE_MASK)) {
+					// A delta only applies on top of the frame right before it, anything else needs a new key frame
+					requestKeyFrame();
+					return;
+				}
+			}
+			else if (!matches) {
+				image = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+			}
+			Rectangle dirty = null;
+			final Graphics2D graphics = image.createGraphics();
+			try {
+				graphics.setComposite(AlphaComposite.Src);
+				for (ScreenshotFrameEvent.Region region : frame.getRegions()) {
+					final ByteBuffer encoded = region.getEncoded();
+					if (encoded == null) {
+						continue;
+					}
+					final BufferedImage decoded = ScreenshotCodec.decode(encoded, null);
+					if (decoded == null) {
+						throw new IOException("Unknown image format");
+					}
+					graphics.drawImage(decoded, region.getX(), region.getY(), null);
+					final Rectangle bounds = new Rectangle(region.getX(), region.getY(),
+							decoded.getWidth(), decoded.getHeight());
+					dirty = dirty == null ? bounds : dirty.union(bounds);
+				}
+			}
+			catch (IOException | IllegalArgumentException e) {
+				// Some regions may already be drawn, the image is no base for further deltas
+				log.warn("Failed to decode screenshot frame {} for {}", frame.getSequence(), clientId, e);
+				// Even if one was requested already, it may have been this frame
+				keyFrameRequested = false;
+				requestKeyFrame();
+				return;
+			}
+			finally {
+				graphics.dispose();
+			}
+			sequence = frame.getSequence();
+			if (frame.isKeyFrame()) {
+				keyFrameRequested = false;
+				dirty = new Rectangle(image.getWidth(), image.getHeight());
+			}
+			if (dirty == null) {
+				return;
+			}
+			changed = dirty.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+		}
+		subscribers.forEach(s -> s.changed(changed));
+	}
+
+	// Guarded by this. A restarted stream starts with a key frame, the stop and start go out in order under the lock.
+	private void requestKeyFrame() {
+		image = null;
+		if (keyFrameRequested) {
+			return;
+		}
+		keyFrameRequested = true;
+		final AsyncAutomationClientImpl client = new AsyncAutomationClientImpl(automationServer, clientId);
+		client.stopScreenshotStream(streamId);
+		client.startScreenshotStream(streamId, requestedFps).whenComplete((v, e) -> {
+			if (e != null) {
+				log.warn("Failed to request a screenshot key frame from {}", clientId, e);
+				synchronized (this) {
+					keyFrameRequested = false;
+				}
+			}
+		});
+	}
+
+	private class Subscriber implements Subscription {
+
+		private final int fps;
+		private final long intervalNanos;
+		private final Consumer<ScreenshotFrame> consumer;
+
+		// Guarded by this
+		private BufferedImage image;
+		private Rectangle pending;
+		private boolean scheduled;
+		private long lastDelivery;
+		private volatile boolean active = true;
+
+		private Subscriber(int fps, Consumer<ScreenshotFrame> consumer) {
+			this.fps = fps;
+			this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+			this.consumer = consumer;
+		}
+
+		@Override
+		public boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public void close() {
+			if (active) {
+				active = false;
+				unsubscribe(this);
+			}
+		}
+
+		private synchronized void changed(Rectangle region) {
+			pending = pending == null ? new Rectangle(region) : pending.union(region);
+			schedule();
+		}
+
+		private synchronized void schedule() {
+			if (scheduled || pending == null || !active) {
+				return;
+			}
+			scheduled = true;
+			final long delay = Math.max(0, lastDelivery + intervalNanos - System.nanoTime());
+			scheduler.schedule(this::deliver, delay, TimeUnit.NANOSECONDS);
+		}
+
+		private void deliver() {
+			final ScreenshotFrame frame;
+			synchronized (ScreenshotStream.this) {
+				synchronized (this) {
+					final BufferedImage source = ScreenshotStream.this.image;
+					if (!active || source == null || pending == null) {
+						scheduled = false;
+						return;
+					}
+					Rectangle region = pending;
+					if (image == null || image.getWidth() != source.getWidth() || image.getHeight() != source.getHeight()) {
+						image = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+						region = new Rectangle(source.getWidth(), source.getHeight());
+					}
+					region = region.intersection(new Rectangle(source.getWidth(), source.getHeight()));
+					if (!region.isEmpty()) {
+						image.setData(source.getData(region));
+					}
+					pending = null;
+					frame = new ScreenshotFrame(image, region, sequence, System.currentTimeMillis());
+				}
+			}
+			try {
+				consumer.accept(frame);
+			}
+			catch (Exception e) {
+				log.error("Exception while processing screenshot frame", e);
+			}
+			synchronized (this) {
+				lastDelivery = System.nanoTime();
+				scheduled = false;
+				// Anything that changed while the consumer was busy goes out in one merged frame
+				schedule();
+			}
+		}
+
+	}
+
+}
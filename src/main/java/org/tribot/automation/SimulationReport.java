@@ -0,0 +1,60 @@
+package org.tribot.automation;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * What a {@link ClientSimulator} has seen so far, from the simulated clients' side. Request latencies as the server
+ * sees them are measured by the server, see {@link InMemoryMetrics}.
+ */
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class SimulationReport {
+
+	/**
+	 * How long the simulation has been running
+	 */
+	private final Duration elapsed;
+	/**
+	 * The number of simulated clients currently connected
+	 */
+	private final int connected;
+	/**
+	 * Successful connections, including reconnects
+	 */
+	private final long connects;
+	private final long connectFailures;
+	private final long disconnects;
+	/**
+	 * Time from starting a connection to the websocket handshake completing
+	 */
+	private final LatencyHistogram connectLatency;
+	/**
+	 * Requests answered, including simulated errors
+	 */
+	private final long requests;
+	/**
+	 * Requests answered, by method name
+	 */
+	private final Map<String, Long> requestsByMethod;
+	/**
+	 * Requests answered with a simulated error
+	 */
+	private final long errors;
+	private final long eventsSent;
+	private final long bytesSent;
+	private final long bytesReceived;
+
+	/**
+	 * @return the requests answered per second over the whole simulation
+	 */
+	public double getRequestsPerSecond() {
+		final long millis = elapsed.toMillis();
+		return millis == 0 ? 0 : requests * 1000.0 / millis;
+	}
+
+}
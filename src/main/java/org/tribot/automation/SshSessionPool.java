@@ -0,0 +1,157 @@
+package org.tribot.automation;
+
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps authenticated ssh sessions open per host, so launches to the same host share a few connections instead of
+ * connecting and authenticating for every command. Each session is shared by several leases at once, each lease
+ * opening its own exec/sftp channels on it.
+ */
+@Slf4j
+class SshSessionPool {
+
+	// OpenSSH allows 10 channels per connection by default (MaxSessions)
+	private static final int MAX_LEASES_PER_SESSION = 8;
+	private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+	private final Map<SshSettings, HostPool> hosts = new ConcurrentHashMap<>();
+
+	SshSessionPool() {
+		final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "ssh-session-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Leases a connected session to a host, connecting a new one only if every open session is busy
+	 *
+	 * @param settings the host to connect to
+	 * @return the lease, which must be closed once its channels are done
+	 * @throws JSchException if a new session could not be connected
+	 */
+	Lease lease(SshSettings settings) throws JSchException {
+		return hosts.computeIfAbsent(settings, HostPool::new).lease();
+	}
+
+	private void evictIdle() {
+		try {
+			hosts.values().forEach(HostPool::evictIdle);
+		}
+		catch (Exception e) {
+			log.warn("Failed to evict idle ssh sessions", e);
+		}
+	}
+
+	/**
+	 * A session leased from the pool, returned to it when closed
+	 */
+	class Lease implements AutoCloseable {
+
+		private final HostPool host;
+		private final PooledSession session;
+		private boolean closed;
+
+		private Lease(HostPool host, PooledSession session) {
+			this.host = host;
+			this.session = session;
+		}
+
+		Session getSession() {
+			return session.session;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				host.release(session);
+			}
+		}
+
+	}
+
+	private class HostPool {
+
+		private final SshSettings settings;
+
+		// Guarded by this
+		private final List<PooledSession> sessions = new ArrayList<>();
+
+		private HostPool(SshSettings settings) {
+			this.settings = settings;
+		}
+
+		// Connecting holds the lock, so concurrent launches to a new host wait for one session instead of each
+		// connecting their own
+		private synchronized Lease lease() throws JSchException {
+			sessions.removeIf(session -> {
+				if (session.session.isConnected()) {
+					return false;
+				}
+				log.debug("Dropping disconnected ssh session to {}", settings.getHost());
+				return true;
+			});
+			PooledSession session = sessions.stream()
+					.filter(s -> s.leases < MAX_LEASES_PER_SESSION)
+					.min(Comparator.comparingInt(s -> s.leases))
+					.orElse(null);
+			if (session == null) {
+				log.debug("Opening ssh session to {} ({} already open)", settings.getHost(), sessions.size());
+				session = new PooledSession(settings.createSession());
+				sessions.add(session);
+			}
+			session.leases++;
+			return new Lease(this, session);
+		}
+
+		private synchronized void release(PooledSession session) {
+			session.leases--;
+			session.lastUsed = System.currentTimeMillis();
+			if (!session.session.isConnected()) {
+				sessions.remove(session);
+			}
+		}
+
+		private synchronized void evictIdle() {
+			final long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT.toMillis();
+			sessions.removeIf(session -> {
+				if (session.leases > 0 || session.lastUsed > idleSince) {
+					return false;
+				}
+				log.debug("Closing idle ssh session to {}", settings.getHost());
+				session.session.disconnect();
+				return true;
+			});
+		}
+
+	}
+
+	private static class PooledSession {
+
+		private final Session session;
+		// Guarded by the host pool
+		private int leases;
+		private long lastUsed = System.currentTimeMillis();
+
+		private PooledSession(Session session) {
+			this.session = session;
+		}
+
+	}
+
+}
@@ -8,6 +8,8 @@ import lombok.Builder;
 import lombok.NonNull;
 import lombok.Value;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Represents an ssh configuration to use when launching a client. It will indicate that the client should
  * be launched on a remote machine.
@@ -42,6 +44,13 @@ public class SshSettings {
      */
     @Builder.Default
     private final String display = ":0.0";
+    /**
+     * Whether to launch clients through a launcher agent kept running on the host, instead of running each launch
+     * over a new ssh command. The agent is started over ssh the first time a client is launched to the host with an
+     * automation server, and then launches clients about as fast as a local launch.
+     * Requires java 11+ on the host, a unix-like host, and this library to be run from its jar.
+     */
+    private final boolean launcherAgent;
 
     Session createSession() throws JSchException {
         final Session session = new JSch().getSession(getUsername(), getHost(), getPort());
@@ -81,6 +90,10 @@ public class SshSettings {
             });
         }
         session.setConfig("StrictHostKeyChecking", "no");
+        // Sessions are pooled, keep them alive between launches and don't let them keep the JVM running
+        session.setServerAliveInterval((int) TimeUnit.SECONDS.toMillis(15));
+        session.setServerAliveCountMax(3);
+        session.setDaemonThread(true);
         session.connect();
         return session;
     }
@@ -0,0 +1,76 @@
+package org.tribot.automation;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Configures the optional client state cache of an automation server. When enabled, reads of client state are
+ * answered from the cache until their time to live passes, instead of making a round trip to the client every time.
+ * Cached state is dropped when the client disconnects or reconnects, when a script is started, stopped, paused or
+ * resumed, and when the client reports a state change (ex. script end, ban).
+ * <p>
+ * A time to live of zero disables caching for that state.
+ */
+@Value
+@Builder
+public class StateCacheSettings {
+
+	/**
+	 * How long the account username is cached. Defaults to 1 minute.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration username = Duration.ofMinutes(1);
+	/**
+	 * How long the current world is cached. Defaults to 5 seconds.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration world = Duration.ofSeconds(5);
+	/**
+	 * How long the logged in state is cached. Defaults to 1 second.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration loggedIn = Duration.ofSeconds(1);
+	/**
+	 * How long skill levels are cached. Defaults to 5 seconds.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration skillLevels = Duration.ofSeconds(5);
+	/**
+	 * How long the script name and login name are cached. Defaults to 5 seconds.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration scriptName = Duration.ofSeconds(5);
+	/**
+	 * How long the in-game position is cached. Defaults to not cached.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration tile = Duration.ZERO;
+	/**
+	 * How long inventory items are cached. Defaults to not cached.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration inventory = Duration.ZERO;
+	/**
+	 * How long game settings are cached. Defaults to not cached.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration gameSettings = Duration.ZERO;
+	/**
+	 * How long varbits are cached. Defaults to not cached.
+	 */
+	@NonNull
+	@Builder.Default
+	private final Duration varbits = Duration.ZERO;
+
+}
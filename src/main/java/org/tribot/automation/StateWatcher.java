@@ -0,0 +1,159 @@
+package org.tribot.automation;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The server side of a client's varbit and game setting watches. The client is told which ids to watch and pushes
+ * only the (id, value) pairs that changed, instead of the server polling every id. Watches are registered again
+ * when the client reconnects, and listeners are only told about values that actually changed in the meantime.
+ */
+@Slf4j
+class StateWatcher {
+
+	@RequiredArgsConstructor
+	enum Kind {
+		VARBITS("watchVarbits", "varbit:"),
+		GAME_SETTINGS("watchGameSettings", "gameSetting:");
+
+		private final String method;
+		// Matches the state cache keys of single reads
+		private final String cacheKeyPrefix;
+	}
+
+	private final AutomationServerImpl automationServer;
+	private final String clientId;
+	private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+	StateWatcher(AutomationServerImpl automationServer, String clientId) {
+		this.automationServer = automationServer;
+		this.clientId = clientId;
+		automationServer.onEvent(clientId, VarbitsChangedEvent.class, e -> onChange(e.getWatchId(), e.getChanges()));
+		automationServer.onEvent(clientId, GameSettingsChangedEvent.class,
+				e -> onChange(e.getWatchId(), e.getChanges()));
+	}
+
+	Subscription watch(Kind kind, int[] ids, Consumer<Map<Integer, Integer>> listener) throws AutomationException {
+		if (ids.length == 0) {
+			throw new IllegalArgumentException("No ids to watch");
+		}
+		final Watch watch = new Watch(kind, ids.clone(), listener);
+		watches.put(watch.id, watch);
+		final int[][] values;
+		try {
+			values = automationServer.await(watch.register());
+		}
+		catch (AutomationException e) {
+			watches.remove(watch.id);
+			throw e;
+		}
+		watch.update(values, true);
+		return watch;
+	}
+
+	void restart() {
+		watches.values().forEach(watch -> watch.register().whenComplete((values, e) -> {
+			if (e != null) {
+				log.warn("Failed to restart watch {} for {}", watch.id, clientId, e);
+				return;
+			}
+			watch.update(values, true);
+		}));
+	}
+
+	void close() {
+		watches.values().forEach(Watch::close);
+	}
+
+	private void onChange(String watchId, int[][] changes) {
+		final Watch watch = watches.get(watchId);
+		if (watch == null || changes == null) {
+			return;
+		}
+		for (int[] change : changes) {
+			automationServer.invalidateState(clientId, watch.kind.cacheKeyPrefix + change[0]);
+		}
+		watch.update(changes, false);
+	}
+
+	private class Watch implements Subscription {
+
+		private final String id = UUID.randomUUID().toString();
+		private final Kind kind;
+		private final int[] ids;
+		private final Consumer<Map<Integer, Integer>> listener;
+
+		// Guarded by this
+		private final Map<Integer, Integer> values = new HashMap<>();
+		// Ids pushed since the last registration, newer than the values in the registration's response
+		private final Set<Integer> changedSinceRegister = new HashSet<>();
+		private volatile boolean active = true;
+
+		private Watch(Kind kind, int[] ids, Consumer<Map<Integer, Integer>> listener) {
+			this.kind = kind;
+			this.ids = ids;
+			this.listener = listener;
+		}
+
+		@Override
+		public boolean isActive() {
+			return active;
+		}
+
+		@Override
+		public void close() {
+			if (!active) {
+				return;
+			}
+			active = false;
+			watches.remove(id);
+			new AsyncAutomationClientImpl(automationServer, clientId).unwatch(id).whenComplete((v, e) -> {
+				if (e != null) {
+					log.debug("Failed to remove watch {} for {}", id, clientId, e);
+				}
+			});
+		}
+
+		private CompletableFuture<int[][]> register() {
+			synchronized (this) {
+				changedSinceRegister.clear();
+			}
+			return new AsyncAutomationClientImpl(automationServer, clientId).watch(kind.method, id, ids);
+		}
+
+		private synchronized void update(int[][] changes, boolean registration) {
+			if (!active || changes == null) {
+				return;
+			}
+			final Map<Integer, Integer> changed = new LinkedHashMap<>();
+			for (int[] change : changes) {
+				if (registration && changedSinceRegister.contains(change[0])) {
+					continue;
+				}
+				if (!registration) {
+					changedSinceRegister.add(change[0]);
+				}
+				final Integer previous = values.put(change[0], change[1]);
+				if (previous == null || previous != change[1]) {
+					changed.put(change[0], change[1]);
+				}
+			}
+			if (changed.isEmpty()) {
+				return;
+			}
+			try {
+				listener.accept(Collections.unmodifiableMap(changed));
+			}
+			catch (Exception e) {
+				log.error("Exception while processing watch listener", e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,22 @@
+package org.tribot.automation;
+
+/**
+ * Represents an active subscription to data pushed by a client, such as a screenshot stream
+ */
+public interface Subscription extends AutoCloseable {
+
+    /**
+     * Checks if this subscription is still receiving updates
+     *
+     * @return true if it is active, false if it was closed
+     */
+    boolean isActive();
+
+    /**
+     * Stops this subscription. No more updates will be delivered once this returns, other than one that is
+     * already being delivered.
+     */
+    @Override
+    void close();
+
+}
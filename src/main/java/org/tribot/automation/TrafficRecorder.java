@@ -0,0 +1,378 @@
+package org.tribot.automation;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends every frame an automation server sends and receives to a file, with when it happened and which client it
+ * was for, so production traffic can be replayed later with {@link TrafficReplay}.
+ * <p>
+ * The file starts with a magic number and version, then a session record each time a server starts recording, then
+ * one record per event: a type byte, the microseconds since the previous record and the client's index within the
+ * session as varints, and for frames the varint length and the frame's bytes. Client ids are written once per session.
+ * A recording cut off mid-record, ex. by a crash, is truncated to its last complete record before a new session is
+ * appended.
+ */
+@Slf4j
+class TrafficRecorder implements AutoCloseable {
+
+	private static final int MAGIC = 0x54524146; // "TRAF"
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = 5;
+
+	private static final int SESSION = 0;
+	private static final int CLIENT = 1;
+	private static final int OPEN = 2;
+	private static final int CLOSE = 3;
+	private static final int INBOUND_TEXT = 4;
+	private static final int INBOUND_BINARY = 5;
+	private static final int OUTBOUND_TEXT = 6;
+	private static final int OUTBOUND_BINARY = 7;
+
+	// Guarded by this
+	private final DataOutputStream out;
+	private final Map<String, Integer> clientIndexes = new HashMap<>();
+	private long lastRecordNanos;
+	private boolean failed;
+
+	TrafficRecorder(Path path) throws IOException {
+		final boolean empty = truncateToLastRecord(path) == 0;
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND), 1 << 16));
+		if (empty) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+		}
+		out.writeByte(SESSION);
+		writeVarLong(out, System.currentTimeMillis());
+		lastRecordNanos = System.nanoTime();
+	}
+
+	void open(String clientId, WireFormat format) {
+		record(OPEN, clientId, format.getName().getBytes(StandardCharsets.UTF_8));
+	}
+
+	void close(String clientId) {
+		record(CLOSE, clientId, null);
+	}
+
+	void inbound(String clientId, String frame) {
+		record(INBOUND_TEXT, clientId, frame.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void inbound(String clientId, ByteBuffer frame) {
+		record(INBOUND_BINARY, clientId, toBytes(frame));
+	}
+
+	void outbound(String clientId, String frame) {
+		record(OUTBOUND_TEXT, clientId, frame.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void outbound(String clientId, byte[] frame) {
+		record(OUTBOUND_BINARY, clientId, frame);
+	}
+
+	synchronized void flush() {
+		if (failed) {
+			return;
+		}
+		try {
+			out.flush();
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			out.close();
+		}
+		catch (IOException e) {
+			log.warn("Failed to close traffic recording", e);
+		}
+		failed = true;
+	}
+
+	// Never throws, a full disk stops the recording instead of failing client traffic
+	private synchronized void record(int type, String clientId, byte[] payload) {
+		if (failed) {
+			return;
+		}
+		try {
+			Integer index = clientIndexes.get(clientId);
+			if (index == null) {
+				index = clientIndexes.size();
+				clientIndexes.put(clientId, index);
+				final byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+				out.writeByte(CLIENT);
+				writeVarLong(out, 0);
+				writeVarLong(out, index);
+				writeVarLong(out, id.length);
+				out.write(id);
+			}
+			final long now = System.nanoTime();
+			out.writeByte(type);
+			writeVarLong(out, (now - lastRecordNanos) / 1000);
+			// Only whole microseconds are written, keep the remainder for the next record
+			lastRecordNanos = now - (now - lastRecordNanos) % 1000;
+			writeVarLong(out, index);
+			if (payload != null) {
+				writeVarLong(out, payload.length);
+				out.write(payload);
+			}
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	// A server that died mid-write leaves half a record, appending after it would corrupt everything recorded later
+	private static long truncateToLastRecord(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		final long size = Files.size(path);
+		long length = 0;
+		// A header cut short has nothing worth keeping, anything else that isn't a recording is never overwritten
+		if (size >= HEADER_LENGTH) {
+			// Damage other than a cut off end fails here, better than appending to it
+			try (final RecordReader reader = read(path)) {
+				while (reader.next() != null) {
+				}
+				length = reader.validLength;
+			}
+		}
+		if (length < size) {
+			log.warn("Truncating traffic recording {} from {} to {} bytes, after its last complete record", path,
+					size, length);
+			try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				channel.truncate(length);
+			}
+		}
+		return length;
+	}
+
+	private void fail(IOException e) {
+		log.warn("Failed to write traffic recording, recording stopped", e);
+		failed = true;
+	}
+
+	/**
+	 * Opens a recording to read its records one at a time. Sessions are joined end to end, so gaps between server
+	 * runs are skipped.
+	 *
+	 * @param path the recording
+	 * @return a reader positioned at the first record
+	 * @throws IOException if the file could not be read or is not a recording
+	 */
+	static RecordReader read(Path path) throws IOException {
+		return new RecordReader(path);
+	}
+
+	private static byte[] toBytes(ByteBuffer frame) {
+		final byte[] bytes = new byte[frame.remaining()];
+		frame.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static byte[] readPayload(DataInputStream in) throws IOException {
+		final byte[] payload = new byte[(int) readVarLong(in)];
+		in.readFully(payload);
+		return payload;
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			out.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Reads a recording's records in order, without holding more than one in memory
+	 */
+	static class RecordReader implements AutoCloseable {
+
+		private final Path path;
+		private final CountingInputStream counter;
+		private final DataInputStream in;
+		// Client index -> ID, per session
+		private final Map<Integer, String> clientIds = new HashMap<>();
+		private long micros;
+		// The end of the last complete record
+		private long validLength;
+
+		private RecordReader(Path path) throws IOException {
+			this.path = path;
+			counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+			in = new DataInputStream(counter);
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new IOException(path + " is not a traffic recording");
+				}
+				final int version = in.readUnsignedByte();
+				if (version != VERSION) {
+					throw new IOException("Unsupported traffic recording version " + version);
+				}
+				validLength = counter.count;
+			}
+			catch (EOFException e) {
+				in.close();
+				throw new IOException(path + " is not a traffic recording", e);
+			}
+			catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the next record, or null at the end of the recording
+		 * @throws IOException if the file could not be read or has an unknown record
+		 */
+		Record next() throws IOException {
+			while (true) {
+				final long offset = counter.count;
+				final int type = in.read();
+				if (type < 0) {
+					return null;
+				}
+				try {
+					final Record record = readRecord(type, offset);
+					validLength = counter.count;
+					if (record != null) {
+						return record;
+					}
+				}
+				catch (EOFException e) {
+					// Ex. cut off by a crash, everything before it is still good
+					log.warn("Traffic recording {} ends with a truncated record at byte {}, ignoring the rest", path,
+							offset);
+					return null;
+				}
+			}
+		}
+
+		// Null for records that only update the reader's state
+		private Record readRecord(int type, long offset) throws IOException {
+			if (type == SESSION) {
+				readVarLong(in);
+				clientIds.clear();
+				return null;
+			}
+			micros += readVarLong(in);
+			final int index = (int) readVarLong(in);
+			if (type == CLIENT) {
+				clientIds.put(index, new String(readPayload(in), StandardCharsets.UTF_8));
+				return null;
+			}
+			final String clientId = clientIds.get(index);
+			switch (type) {
+				case OPEN:
+					return new Record(micros, Record.Kind.OPEN, clientId,
+							WireFormat.forName(new String(readPayload(in), StandardCharsets.UTF_8)), null);
+				case CLOSE:
+					return new Record(micros, Record.Kind.CLOSE, clientId, null, null);
+				case INBOUND_TEXT:
+				case INBOUND_BINARY:
+					return new Record(micros, Record.Kind.INBOUND, clientId,
+							type == INBOUND_TEXT ? WireFormat.JSON : WireFormat.MESSAGE_PACK, readPayload(in));
+				case OUTBOUND_TEXT:
+				case OUTBOUND_BINARY:
+					return new Record(micros, Record.Kind.OUTBOUND, clientId,
+							type == OUTBOUND_TEXT ? WireFormat.JSON : WireFormat.MESSAGE_PACK, readPayload(in));
+				default:
+					throw new IOException("Unknown traffic record type " + type + " at byte " + offset);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+	// Counts the bytes read so far, to say where a recording is damaged
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+	}
+
+	@Value
+	static class Record {
+
+		enum Kind {
+			OPEN,
+			CLOSE,
+			// Client to server
+			INBOUND,
+			// Server to client
+			OUTBOUND
+		}
+
+		// Microseconds since the recording started
+		private final long time;
+		private final Kind kind;
+		private final String clientId;
+		// The connection's format when opened, otherwise json for text frames and msgpack for binary frames
+		private final WireFormat format;
+		private final byte[] frame;
+
+	}
+
+}
@@ -0,0 +1,519 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Replays a traffic recording (see {@link AutomationServer.AutomationServerBuilder#trafficRecording}) against the
+ * automation server in this build. The recorded clients connect, push their events and answer the recorded requests
+ * with their recorded responses and response times, while the recorded requests are sent through the server again,
+ * so request latencies and throughput of two builds can be compared on the same traffic.
+ * <p>
+ * Replayed requests get new ids, their recorded responses are matched to them by client and method, in order.
+ * Requests that were never answered in the recording time out again. The recording is streamed twice, once to
+ * collect the recorded responses and once to replay it, so only the responses are held in memory.
+ */
+@Slf4j
+public class TrafficReplay {
+
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	private final Path recording;
+	// Infinite replays as fast as possible
+	private final double speed;
+	private final InMemoryMetrics metrics = new InMemoryMetrics();
+	// Client ID + request ID -> the recorded response
+	private final Map<String, RecordedResponse> responses = new HashMap<>();
+	private final Map<String, ReplayClient> clients = new HashMap<>();
+	private final List<CompletableFuture<?>> requests = new ArrayList<>();
+	private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+			Runtime.getRuntime().availableProcessors(), r -> {
+				final Thread thread = new Thread(r, "traffic-replay");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private final HttpClient httpClient = HttpClient.newBuilder().executor(scheduler).build();
+
+	private AutomationServerImpl server;
+
+	private TrafficReplay(Path recording, double speed) {
+		this.recording = recording;
+		this.speed = speed;
+	}
+
+	/**
+	 * Replays a recording and compares the result to a baseline from an earlier replay, ex. of the previous build
+	 *
+	 * @param args the recording, the speed (ex. {@code 1} for real time, {@code 10} for ten times as fast or
+	 *             {@code max}) and optionally a baseline file. The baseline is written if it doesn't exist, otherwise
+	 *             this replay is compared to it.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: TrafficReplay <recording> <speed|max> [baseline]");
+			System.exit(1);
+		}
+		final double speed = "max".equalsIgnoreCase(args[1]) ? Double.POSITIVE_INFINITY : Double.parseDouble(args[1]);
+		final Properties summary = summarize(replay(Path.of(args[0]), speed));
+		if (args.length == 2) {
+			summary.store(System.out, null);
+			return;
+		}
+		final Path baselinePath = Path.of(args[2]);
+		if (Files.notExists(baselinePath)) {
+			try (final Writer writer = Files.newBufferedWriter(baselinePath)) {
+				summary.store(writer, "Traffic replay baseline");
+			}
+			System.out.println("Wrote baseline to " + baselinePath);
+			summary.store(System.out, null);
+			return;
+		}
+		final Properties baseline = new Properties();
+		try (final Reader reader = Files.newBufferedReader(baselinePath)) {
+			baseline.load(reader);
+		}
+		new TreeSet<>(summary.stringPropertyNames()).forEach(key -> {
+			final double current = Double.parseDouble(summary.getProperty(key));
+			final String before = baseline.getProperty(key);
+			if (before == null) {
+				System.out.printf("%s: %.2f (new)%n", key, current);
+				return;
+			}
+			final double previous = Double.parseDouble(before);
+			final double change = previous == 0 ? 0 : (current - previous) / previous * 100;
+			System.out.printf("%s: %.2f -> %.2f (%+.1f%%)%n", key, previous, current, change);
+		});
+	}
+
+	/**
+	 * Replays a recording against a new automation server on a free local port
+	 *
+	 * @param recording the recording file
+	 * @param speed how many times faster than recorded to replay, or {@link Double#POSITIVE_INFINITY} for as fast as
+	 *              possible
+	 * @return the replayed requests' latencies and throughput
+	 * @throws IOException if the recording could not be read
+	 */
+	public static ReplayReport replay(Path recording, double speed) throws IOException, InterruptedException {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("Speed must be positive: " + speed);
+		}
+		return new TrafficReplay(recording, speed).run();
+	}
+
+	private ReplayReport run() throws IOException, InterruptedException {
+		// Also checks the file is a recording before starting anything
+		indexResponses();
+		final int port;
+		try (final ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		server = AutomationServerImpl.builder().port(port).metricsSink(metrics).build();
+		try {
+			final long start = System.nanoTime();
+			try (final TrafficRecorder.RecordReader reader = TrafficRecorder.read(recording)) {
+				TrafficRecorder.Record record;
+				while ((record = reader.next()) != null) {
+					waitUntil(start, record.getTime());
+					replay(record);
+				}
+			}
+			long failures = 0;
+			for (CompletableFuture<?> request : requests) {
+				try {
+					request.join();
+				}
+				catch (CompletionException | CancellationException e) {
+					failures++;
+				}
+			}
+			final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+			return new ReplayReport(elapsed, requests.size(), failures, metrics.snapshot());
+		}
+		finally {
+			clients.values().forEach(ReplayClient::disconnect);
+			server.close();
+			scheduler.shutdownNow();
+		}
+	}
+
+	// Summary of a replay as flat numbers, so replays in different JVMs can be compared
+	private static Properties summarize(ReplayReport report) {
+		final Properties summary = new Properties();
+		summary.setProperty("requests", Long.toString(report.getRequests()));
+		summary.setProperty("failures", Long.toString(report.getFailures()));
+		summary.setProperty("requestsPerSecond", String.format(Locale.ROOT, "%.2f", report.getRequestsPerSecond()));
+		summarize(summary, "fleet", report.getMetrics().getFleet());
+		report.getMetrics().getMethods().forEach((method, stats) -> summarize(summary, "method." + method, stats));
+		return summary;
+	}
+
+	private static void summarize(Properties summary, String prefix, RpcStats stats) {
+		final LatencyHistogram latency = stats.getLatency();
+		summary.setProperty(prefix + ".count", Long.toString(latency.getCount()));
+		summary.setProperty(prefix + ".meanMillis", toMillis(latency.getMean()));
+		summary.setProperty(prefix + ".p50Millis", toMillis(latency.getPercentile(50)));
+		summary.setProperty(prefix + ".p99Millis", toMillis(latency.getPercentile(99)));
+		summary.setProperty(prefix + ".maxMillis", toMillis(latency.getMax()));
+	}
+
+	private static String toMillis(Duration duration) {
+		return String.format(Locale.ROOT, "%.3f", duration.toNanos() / 1_000_000.0);
+	}
+
+	private void indexResponses() throws IOException {
+		try (final TrafficRecorder.RecordReader reader = TrafficRecorder.read(recording)) {
+			TrafficRecorder.Record record;
+			while ((record = reader.next()) != null) {
+				if (record.getKind() == TrafficRecorder.Record.Kind.INBOUND) {
+					indexResponses(record);
+				}
+			}
+		}
+	}
+
+	private void indexResponses(TrafficRecorder.Record record) {
+		final ByteBuffer frame = ByteBuffer.wrap(record.getFrame());
+		if (record.getFormat() == WireFormat.MESSAGE_PACK && AttachmentFrame.isAttachment(frame)) {
+			final AttachmentFrame attachment = AttachmentFrame.read(frame);
+			if (attachment.getKind() == AttachmentFrame.KIND_RESULT) {
+				responses.put(getKey(record.getClientId(), attachment.getId()),
+						new RecordedResponse(record.getTime(), null, attachment.getPayload()));
+			}
+			return;
+		}
+		for (JsonObject message : decode(record)) {
+			if (isResponse(message)) {
+				responses.put(getKey(record.getClientId(), message.get("id").getAsString()),
+						new RecordedResponse(record.getTime(), message, null));
+			}
+		}
+	}
+
+	private void replay(TrafficRecorder.Record record) {
+		final ReplayClient client = clients.computeIfAbsent(record.getClientId(), ReplayClient::new);
+		if (client.connection == null && record.getKind() != TrafficRecorder.Record.Kind.OPEN) {
+			// Connected before the recording started
+			client.connect(record.getFormat());
+		}
+		switch (record.getKind()) {
+			case OPEN:
+				client.connect(record.getFormat());
+				break;
+			case CLOSE:
+				client.disconnect();
+				break;
+			case INBOUND:
+				// Responses are sent when the replayed request arrives, everything else is sent as recorded
+				if (!isResponses(record)) {
+					if (awaitConnected(client)) {
+						client.send(record.getFrame(), record.getFormat() == WireFormat.MESSAGE_PACK);
+					}
+				}
+				break;
+			case OUTBOUND:
+				replayRequests(client, record);
+				break;
+		}
+	}
+
+	private void replayRequests(ReplayClient client, TrafficRecorder.Record record) {
+		final List<JsonObject> messages = decode(record);
+		final List<AutomationServerImpl.AutomationRequest<JsonElement>> replayed = new ArrayList<>();
+		for (JsonObject message : messages) {
+			// Responses to client requests and notifications such as cancels are the server's own doing
+			if (!message.has("method") || !message.has("id") || message.get("id").isJsonNull()) {
+				continue;
+			}
+			final String method = message.get("method").getAsString();
+			final RecordedResponse response =
+					responses.get(getKey(record.getClientId(), message.get("id").getAsString()));
+			if (response != null) {
+				client.expect(method, response.withDelay(response.getTime() - record.getTime()));
+			}
+			final List<JsonElement> params = new ArrayList<>();
+			if (message.has("params") && message.get("params").isJsonArray()) {
+				message.getAsJsonArray("params").forEach(params::add);
+			}
+			replayed.add(AutomationServerImpl.AutomationRequest.<JsonElement>builder()
+					.method(method)
+					.params(params)
+					.returnType(JsonElement.class)
+					.build());
+		}
+		if (replayed.isEmpty() || !awaitConnected(client)) {
+			return;
+		}
+		if (replayed.size() == 1 && messages.size() == 1) {
+			requests.add(server.sendAsync(client.id, replayed.get(0)));
+			return;
+		}
+		final AutomationServerImpl.Batch batch = server.batch(client.id);
+		replayed.forEach(request -> requests.add(batch.add(request)));
+		batch.send();
+	}
+
+	private boolean awaitConnected(ReplayClient client) {
+		try {
+			client.connection.get(CONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+			final long deadline = System.nanoTime() + CONNECT_TIMEOUT.toNanos();
+			// The client sees the handshake finish slightly before the server registers it
+			while (!server.isConnected(client.id)) {
+				if (System.nanoTime() > deadline) {
+					throw new TimeoutException();
+				}
+				Thread.sleep(1);
+			}
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | TimeoutException e) {
+			log.warn("Replayed client {} failed to connect, skipping its traffic", client.id, e);
+		}
+		return false;
+	}
+
+	private void waitUntil(long start, long micros) throws InterruptedException {
+		if (Double.isInfinite(speed)) {
+			return;
+		}
+		final long delay = start + scale(micros) - System.nanoTime();
+		if (delay > 0) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	// Recorded microseconds to replay nanoseconds
+	private long scale(long micros) {
+		return Double.isInfinite(speed) ? 0 : (long) (micros * 1000 / speed);
+	}
+
+	private static boolean isResponses(TrafficRecorder.Record record) {
+		final ByteBuffer frame = ByteBuffer.wrap(record.getFrame());
+		if (record.getFormat() == WireFormat.MESSAGE_PACK && AttachmentFrame.isAttachment(frame)) {
+			return AttachmentFrame.read(frame).getKind() == AttachmentFrame.KIND_RESULT;
+		}
+		final List<JsonObject> messages = decode(record);
+		return !messages.isEmpty() && messages.stream().allMatch(TrafficReplay::isResponse);
+	}
+
+	private static boolean isResponse(JsonObject message) {
+		return !message.has("method") && message.has("id") && !message.get("id").isJsonNull();
+	}
+
+	private static List<JsonObject> decode(TrafficRecorder.Record record) {
+		final JsonElement frame = record.getFormat() == WireFormat.MESSAGE_PACK
+				? MessagePack.decode(ByteBuffer.wrap(record.getFrame()))
+				: JsonParser.parseString(new String(record.getFrame(), StandardCharsets.UTF_8));
+		return decode(frame);
+	}
+
+	private static List<JsonObject> decode(JsonElement frame) {
+		final List<JsonObject> messages = new ArrayList<>();
+		if (frame.isJsonObject()) {
+			messages.add(frame.getAsJsonObject());
+		}
+		else if (frame.isJsonArray()) {
+			frame.getAsJsonArray().forEach(message -> {
+				if (message.isJsonObject()) {
+					messages.add(message.getAsJsonObject());
+				}
+			});
+		}
+		return messages;
+	}
+
+	private static String getKey(String clientId, String requestId) {
+		return clientId + "\n" + requestId;
+	}
+
+	@Value
+	private static class RecordedResponse {
+		// Microseconds since the recording started, or since the request once matched to one
+		private final long time;
+		// Null for attachments
+		private final JsonObject message;
+		private final ByteBuffer attachment;
+
+		private RecordedResponse withDelay(long delay) {
+			return new RecordedResponse(delay, message, attachment);
+		}
+	}
+
+	/**
+	 * A recorded client, answering replayed requests with its recorded responses
+	 */
+	private class ReplayClient implements WebSocket.Listener {
+
+		private final String id;
+		// Method -> recorded responses to the replayed requests, in the order the requests were sent
+		private final Map<String, Queue<RecordedResponse>> expected = new ConcurrentHashMap<>();
+		// Only touched by the websocket's listener calls, which never overlap
+		private final StringBuilder partialText = new StringBuilder();
+		private final ByteArrayOutputStream partialBinary = new ByteArrayOutputStream();
+
+		// Null until the first connect
+		private volatile CompletableFuture<WebSocket> connection;
+		private volatile CompletableFuture<Void> closed = CompletableFuture.completedFuture(null);
+		private volatile WireFormat format = WireFormat.JSON;
+		// A websocket only takes one message at a time, each send waits for the previous one. Guarded by this
+		private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+		private ReplayClient(String id) {
+			this.id = id;
+		}
+
+		private void connect(WireFormat format) {
+			this.format = format;
+			final URI uri = URI.create(server.getConnectionUrl(id, true, format));
+			final CompletableFuture<Void> closed = new CompletableFuture<>();
+			// A reconnect waits for the server to drop the previous connection, it refuses duplicates
+			connection = this.closed
+					.thenRun(this::awaitServerDisconnect)
+					.thenCompose(v -> {
+					final WebSocket.Builder builder = httpClient.newWebSocketBuilder();
+					if (format != WireFormat.JSON) {
+						builder.header(WireFormat.HEADER, format.getName());
+					}
+					return builder.buildAsync(uri, this);
+				});
+			connection.whenComplete((webSocket, e) -> {
+				if (e != null) {
+					closed.complete(null);
+				}
+			});
+			this.closed = closed;
+		}
+
+		private void awaitServerDisconnect() {
+			final long deadline = System.nanoTime() + CONNECT_TIMEOUT.toNanos();
+			while (server.isConnected(id) && System.nanoTime() < deadline) {
+				try {
+					Thread.sleep(1);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		private void disconnect() {
+			final CompletableFuture<WebSocket> connection = this.connection;
+			if (connection == null) {
+				return;
+			}
+			connection.thenAccept(webSocket -> webSocket.sendClose(WebSocket.NORMAL_CLOSURE, ""));
+		}
+
+		private void expect(String method, RecordedResponse response) {
+			expected.computeIfAbsent(method, m -> new ConcurrentLinkedQueue<>()).add(response);
+		}
+
+		private synchronized void send(byte[] frame, boolean binary) {
+			final CompletableFuture<WebSocket> connection = this.connection;
+			lastSend = lastSend.exceptionally(e -> null)
+					.thenCompose(v -> connection)
+					.thenCompose(webSocket -> binary
+							? webSocket.sendBinary(ByteBuffer.wrap(frame), true)
+							: webSocket.sendText(new String(frame, StandardCharsets.UTF_8), true));
+		}
+
+		@Override
+		public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+			partialText.append(data);
+			if (last) {
+				final String message = partialText.toString();
+				partialText.setLength(0);
+				onRequests(decode(JsonParser.parseString(message)));
+			}
+			webSocket.request(1);
+			return null;
+		}
+
+		@Override
+		public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+			final byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			partialBinary.writeBytes(bytes);
+			if (last) {
+				final ByteBuffer message = ByteBuffer.wrap(partialBinary.toByteArray());
+				partialBinary.reset();
+				onRequests(decode(MessagePack.decode(message)));
+			}
+			webSocket.request(1);
+			return null;
+		}
+
+		@Override
+		public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+			closed.complete(null);
+			return null;
+		}
+
+		@Override
+		public void onError(WebSocket webSocket, Throwable error) {
+			log.debug("Replayed client {} connection failed", id, error);
+			closed.complete(null);
+		}
+
+		private void onRequests(List<JsonObject> messages) {
+			for (JsonObject message : messages) {
+				if (!message.has("method") || !message.has("id")) {
+					continue;
+				}
+				final Queue<RecordedResponse> queue = expected.get(message.get("method").getAsString());
+				final RecordedResponse response = queue != null ? queue.poll() : null;
+				if (response == null) {
+					// Wasn't answered in the recording either, let it time out
+					continue;
+				}
+				final JsonElement requestId = message.get("id");
+				scheduler.schedule(() -> respond(requestId, response), scale(response.getTime()),
+						TimeUnit.NANOSECONDS);
+			}
+		}
+
+		private void respond(JsonElement requestId, RecordedResponse response) {
+			if (response.getAttachment() != null) {
+				final ByteBuffer frame = AttachmentFrame.write(AttachmentFrame.KIND_RESULT, requestId.getAsString(),
+						response.getAttachment());
+				final byte[] bytes = new byte[frame.remaining()];
+				frame.get(bytes);
+				send(bytes, true);
+				return;
+			}
+			final JsonObject message = response.getMessage().deepCopy();
+			message.add("id", requestId);
+			if (format == WireFormat.MESSAGE_PACK) {
+				send(MessagePack.encode(message), true);
+			}
+			else {
+				send(message.toString().getBytes(StandardCharsets.UTF_8), false);
+			}
+		}
+
+	}
+
+}
@@ -10,11 +10,18 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
+import java.util.concurrent.*;
 
 @Slf4j
 class TribotSplash {
@@ -23,90 +30,164 @@ class TribotSplash {
 	private static final String JAR_NAME = "tribot-splash.jar";
 	private static final String LOCK_FILE = getAppDataDirectory() + File.separator + "tribot-splash.lock";
 	private static final String FILE_PATH = getAppDataDirectory() + File.separator + JAR_NAME;
+	// The verified hash of the jar, with the size and modification time it was taken at
+	private static final String HASH_FILE_PATH = FILE_PATH + ".md5";
+	private static final int BUFFER_SIZE = 256 * 1024;
+	// How long release metadata is trusted before it is revalidated with the server
+	private static final Duration RELEASE_TTL = Duration.ofMinutes(5);
+	// How long a remote jar's hash is trusted before it is checked again, in case it was changed on the host
+	private static final Duration REMOTE_VERIFY_INTERVAL = Duration.ofMinutes(60);
 
 	private final HttpClient httpClient = HttpClient.newHttpClient();
+	private final FileReadWriteLock lock = new FileReadWriteLock(Path.of(LOCK_FILE));
+	private final SshSessionPool sessions;
 
-	private final Map<SshSettings, Long> lastRemoteUpdate = new ConcurrentHashMap<>();
+	// Guarded by this
+	private CachedRelease release;
+	private LocalHash localHash;
 
-	public String update() throws IOException {
-		try (final RandomAccessFile tmp = new RandomAccessFile(LOCK_FILE, "rw")) {
-			tmp.getChannel().lock(); // this will be unlocked when tmp is automatically closed
-			final ProductFile file = getSplashJarFile();
-			final String local = getLocalHash();
-			log.debug("TRiBot splash hash: " + file.getHash() + "; local file hash: " + local);
-			if (!file.getHash().equals(local)) {
-				System.out.println("Attempting to update local tribot-splash.jar");
-				download(file);
-				log.debug("Updated tribot-splash.jar");
+	private final Map<SshSettings, RemoteSplash> remoteSplashes = new ConcurrentHashMap<>();
+
+	TribotSplash(SshSessionPool sessions) {
+		this.sessions = sessions;
+	}
+
+	public String update(LaunchTimer timer) throws IOException {
+		final ProductFile file = timer.time(LaunchPhase.RELEASE_CHECK, this::getSplashJarFile);
+		// Most launches find the jar up-to-date, so they only need to share the lock
+		final boolean current = timer.time(LaunchPhase.HASH_CHECK, () -> {
+			try (final FileReadWriteLock.Handle ignored = lock.read()) {
+				return isCurrent(file);
 			}
-			else {
+		});
+		if (current) {
+			log.debug("TRiBot splash is up-to-date");
+			return FILE_PATH;
+		}
+		try (final FileReadWriteLock.Handle ignored = lock.write()) {
+			// Another thread or process may have updated it while we waited
+			if (isCurrent(file)) {
 				log.debug("TRiBot splash is up-to-date");
+				return FILE_PATH;
 			}
+			System.out.println("Attempting to update local tribot-splash.jar");
+			timer.time(LaunchPhase.DOWNLOAD, () -> {
+				download(file);
+				return null;
+			});
+			log.debug("Updated tribot-splash.jar");
 		}
 		return FILE_PATH;
 	}
 
-	public String update(SshSettings sshConfig) throws IOException {
+	private boolean isCurrent(ProductFile file) {
+		final String local = getLocalHash();
+		log.debug("TRiBot splash hash: " + file.getHash() + "; local file hash: " + local);
+		return file.getHash().equals(local);
+	}
+
+	public String update(SshSettings sshConfig, LaunchTimer timer) throws IOException {
+		// The local jar is on this machine
+		final String local = update(timer.forHost(LaunchTimer.LOCAL_HOST));
+		return updateRemote(sshConfig, local, getLocalHash(), timer);
+	}
+
+	// Uploads the jar to many hosts at once, returns the hosts that failed
+	public Map<SshSettings, IOException> distribute(Collection<SshSettings> hosts, int parallelism) throws IOException {
+		final String local = update(LaunchTimer.NONE);
+		final String localHash = getLocalHash();
+		final Map<SshSettings, IOException> failures = new ConcurrentHashMap<>();
+		if (hosts.isEmpty()) {
+			return failures;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, hosts.size()));
 		try {
-			final String local = update();
-			final String localHash = getLocalHash();
-			final Session session = sshConfig.createSession();
-			try {
-				final String remoteHome = getHome(session);
-				final String remotePath = getRemotePath(remoteHome);
-				final String remoteHash = getRemoteHash(session, remotePath);
-				final long lastUpdate = lastRemoteUpdate.getOrDefault(sshConfig, 0L);
-				// To minimize the amount of dependencies required, we will simply update every 30 mins
-				// if the hash-check fails
-				if ((remoteHash != null && !remoteHash.equals(localHash))
-						|| System.currentTimeMillis() > lastUpdate + TimeUnit.MINUTES.toMillis(60)) {
-					updateRemote(session, local, remotePath);
-					lastRemoteUpdate.put(sshConfig, System.currentTimeMillis());
+			final CompletableFuture<?>[] uploads = hosts.stream()
+					.distinct()
+					.map(host -> CompletableFuture.runAsync(() -> {
+						try {
+							updateRemote(host, local, localHash, LaunchTimer.NONE);
+						}
+						catch (IOException e) {
+							log.debug("Failed to distribute tribot-splash.jar to {}", host.getHost(), e);
+							failures.put(host, e);
+						}
+					}, executor))
+					.toArray(CompletableFuture[]::new);
+			CompletableFuture.allOf(uploads).join();
+		}
+		finally {
+			executor.shutdown();
+		}
+		return failures;
+	}
+
+	private String updateRemote(SshSettings sshConfig, String localPath, String localHash, LaunchTimer timer)
+			throws IOException {
+		final RemoteSplash remote = remoteSplashes.computeIfAbsent(sshConfig, s -> new RemoteSplash());
+		final LaunchTimer.Span check = timer.start(LaunchPhase.REMOTE_CHECK);
+		// Launches to the same host wait for one upload instead of each uploading
+		synchronized (remote) {
+			if (remote.isVerified(localHash)) {
+				check.end();
+				log.debug("Remote TRiBot splash on {} is up-to-date", sshConfig.getHost());
+				return remote.path;
+			}
+			try (final SshSessionPool.Lease lease = sessions.lease(sshConfig)) {
+				final Session session = lease.getSession();
+				if (remote.path == null) {
+					remote.path = getRemotePath(getHome(session));
+				}
+				final String remoteHash = getRemoteHash(session, remote.path);
+				check.end();
+				if (remoteHash == null || !remoteHash.equals(localHash)) {
+					log.debug("Uploading tribot-splash.jar to {}", sshConfig.getHost());
+					final LaunchTimer.Span upload = timer.start(LaunchPhase.UPLOAD);
+					try {
+						uploadRemote(session, localPath, remote.path);
+					}
+					finally {
+						upload.end();
+					}
+					final String uploadedHash = getRemoteHash(session, remote.path);
+					// Hosts without md5sum are trusted once uploaded
+					if (uploadedHash != null && !uploadedHash.equals(localHash)) {
+						throw new IOException("Uploaded tribot-splash.jar to " + sshConfig.getHost() + " but its hash "
+						                      + uploadedHash + " does not match " + localHash);
+					}
 				}
-				return remotePath;
+				remote.verified(localHash);
+				return remote.path;
+			}
+			catch (JSchException | SftpException e) {
+				throw new IOException(e);
 			}
 			finally {
-				session.disconnect();
+				check.end();
 			}
 		}
-		catch (JSchException | SftpException | InterruptedException e) {
-			throw new IOException(e);
-		}
 	}
 
 	// Returns a non-null response only if the response is a valid hash
 	private String getRemoteHash(Session session, String file) {
 		try {
-			final ChannelExec channel = (ChannelExec) session.openChannel("exec");
-			try {
-				channel.setCommand("md5sum " + '"' + file + '"');
-				ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
-				channel.setOutputStream(responseStream);
-				channel.connect();
-				while (channel.isConnected()) {
-					Thread.sleep(100);
-				}
-				final String response = responseStream.toString().toUpperCase();
-				if (response.length() < 32) {
-					return null;
-				}
-				final String checksum = response.substring(0, 32);
-				if (!checksum.matches("[A-Z0-9]*")) {
-					return null;
-				}
-				log.debug("Remote hash: {}", checksum);
-				return checksum;
+			final String response = exec(session, "md5sum " + '"' + file + '"').toUpperCase();
+			if (response.length() < 32) {
+				return null;
 			}
-			finally {
-				channel.disconnect();
+			final String checksum = response.substring(0, 32);
+			if (!checksum.matches("[A-Z0-9]*")) {
+				return null;
 			}
+			log.debug("Remote hash: {}", checksum);
+			return checksum;
 		}
 		catch (Exception e) {
 			return null;
 		}
 	}
 
-	private void updateRemote(Session session, String localPath, String remotePath) throws JSchException, SftpException {
+	private void uploadRemote(Session session, String localPath, String remotePath) throws JSchException, SftpException {
 		final ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
 		try {
 			sftp.connect();
@@ -121,66 +202,190 @@ class TribotSplash {
 		return home + "/tribot-splash.jar";
 	}
 
-	private String getHome(Session session) throws JSchException, InterruptedException {
+	private String getHome(Session session) throws JSchException, IOException {
+		return exec(session, "echo ~").replace("\n", "").replace("\r\n", "");
+	}
+
+	// Runs a command and returns its output, reading it as it arrives until the command exits
+	static String exec(Session session, String command) throws JSchException, IOException {
 		final ChannelExec channel = (ChannelExec) session.openChannel("exec");
 		try {
-			channel.setCommand("echo ~");
-			ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
-			channel.setOutputStream(responseStream);
+			channel.setCommand(command);
+			final InputStream output = channel.getInputStream();
 			channel.connect();
-			while (channel.isConnected()) {
-				Thread.sleep(100);
-			}
-			return responseStream.toString().replace("\n", "").replace("\r\n", "");
+			return new String(output.readAllBytes());
 		}
 		finally {
 			channel.disconnect();
 		}
 	}
 
+	// Hashes the jar while it streams to a temp file, and only moves it into place once it matches the release
 	private void download(ProductFile file) throws IOException {
 		final HttpRequest request = HttpRequest.newBuilder(URI.create(file.getUrl()))
 				.GET()
 				.build();
+		final Path target = Path.of(FILE_PATH);
+		final Path temp = Files.createTempFile(target.getParent(), JAR_NAME, ".part");
 		try {
-			this.httpClient.send(request, BodyHandlers.ofFile(Path.of(FILE_PATH)));
+			final HttpResponse<InputStream> response;
+			try {
+				response = this.httpClient.send(request, BodyHandlers.ofInputStream());
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			final String hash;
+			try (final ReadableByteChannel in = Channels.newChannel(response.body());
+			     final FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				if (response.statusCode() != 200) {
+					throw new IOException("Failed to download tribot-splash.jar: HTTP " + response.statusCode());
+				}
+				final MessageDigest digest = newMd5();
+				final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+				while (in.read(buffer) != -1) {
+					buffer.flip();
+					digest.update(buffer.duplicate());
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					buffer.clear();
+				}
+				out.force(true);
+				hash = toHex(digest.digest());
+			}
+			if (!hash.equalsIgnoreCase(file.getHash())) {
+				throw new IOException("Downloaded tribot-splash.jar hash " + hash + " does not match release hash "
+				                      + file.getHash());
+			}
+			move(temp, target);
+			recordHash(target, hash);
 		}
-		catch (InterruptedException e) {
-			throw new IllegalStateException(e);
+		finally {
+			Files.deleteIfExists(temp);
 		}
 	}
 
+	// Only hashes the jar again when its size or modification time changed
 	private String getLocalHash() {
 		try {
-			return getMD5Checksum(FILE_PATH).toUpperCase();
+			final File file = new File(FILE_PATH);
+			final long size = file.length();
+			final long lastModified = file.lastModified();
+			synchronized (this) {
+				if (localHash != null && localHash.matches(size, lastModified)) {
+					return localHash.getHash();
+				}
+			}
+			String hash = readRecordedHash(size, lastModified);
+			if (hash == null) {
+				hash = getMD5Checksum(FILE_PATH).toUpperCase();
+				recordHash(file.toPath(), hash);
+			}
+			synchronized (this) {
+				localHash = new LocalHash(size, lastModified, hash);
+			}
+			return hash;
 		}
 		catch (Exception e) {
 			return null;
 		}
 	}
 
-	private ProductFile getSplashJarFile() throws IOException {
-		final TribotProduct response = getSplashProduct();
-		for (ProductFile file : response.getFiles()) {
-			if (JAR_NAME.equals(file.getFileName())) {
-				return file;
+	// The hash recorded next to the jar, if the jar hasn't changed since
+	private String readRecordedHash(long size, long lastModified) {
+		try {
+			final String[] recorded = Files.readString(Path.of(HASH_FILE_PATH)).trim().split(" ");
+			if (recorded.length == 3 && Long.parseLong(recorded[1]) == size
+			    && Long.parseLong(recorded[2]) == lastModified) {
+				return recorded[0];
 			}
 		}
-		throw new IllegalStateException("Could not find the tribot splash jar");
+		catch (Exception e) {
+			log.trace("No recorded tribot-splash.jar hash", e);
+		}
+		return null;
 	}
 
-	private TribotProduct getSplashProduct() throws IOException {
-		final HttpRequest request = HttpRequest.newBuilder(URI.create(TRIBOT_SPLASH_URL))
-				.GET()
-				.build();
+	private void recordHash(Path jar, String hash) throws IOException {
+		final Path hashFile = Path.of(HASH_FILE_PATH);
+		final Path temp = Files.createTempFile(hashFile.getParent(), JAR_NAME, ".md5.part");
+		try {
+			Files.writeString(temp, hash.toUpperCase() + " " + Files.size(jar) + " "
+			                        + Files.getLastModifiedTime(jar).toMillis());
+			move(temp, hashFile);
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+		synchronized (this) {
+			localHash = null;
+		}
+	}
+
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private ProductFile getSplashJarFile() throws IOException {
+		final CachedRelease previous;
+		synchronized (this) {
+			if (release != null && !release.isExpired()) {
+				return release.getFile();
+			}
+			previous = release;
+		}
+		final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(TRIBOT_SPLASH_URL)).GET();
+		if (previous != null) {
+			// Revalidate, the server only sends the release again if it changed
+			previous.getEtag().ifPresent(etag -> request.header("If-None-Match", etag));
+			previous.getLastModified().ifPresent(lastModified -> request.header("If-Modified-Since", lastModified));
+		}
 		final HttpResponse<String> response;
 		try {
-			response = this.httpClient.send(request, BodyHandlers.ofString());
+			response = this.httpClient.send(request.build(), BodyHandlers.ofString());
 		}
 		catch (InterruptedException e) {
 			throw new IllegalStateException(e);
 		}
-		return new Gson().fromJson(response.body(), TribotProduct.class);
+		final CachedRelease updated;
+		if (previous != null && response.statusCode() == 304) {
+			log.debug("TRiBot splash release is unchanged");
+			updated = new CachedRelease(previous.getFile(), previous.getEtag(), previous.getLastModified());
+		}
+		else if (response.statusCode() == 200) {
+			final TribotProduct product = new Gson().fromJson(response.body(), TribotProduct.class);
+			updated = new CachedRelease(findJarFile(product),
+					response.headers().firstValue("ETag"),
+					response.headers().firstValue("Last-Modified"));
+		}
+		else if (previous != null) {
+			// Keep launching with the release we know, and don't ask again until it expires
+			log.warn("Failed to revalidate TRiBot splash release: HTTP {}, keeping the cached release",
+					response.statusCode());
+			updated = new CachedRelease(previous.getFile(), previous.getEtag(), previous.getLastModified());
+		}
+		else {
+			throw new IOException("Failed to get TRiBot splash release: HTTP " + response.statusCode());
+		}
+		synchronized (this) {
+			release = updated;
+		}
+		return updated.getFile();
+	}
+
+	private ProductFile findJarFile(TribotProduct response) {
+		for (ProductFile file : response.getFiles()) {
+			if (JAR_NAME.equals(file.getFileName())) {
+				return file;
+			}
+		}
+		throw new IllegalStateException("Could not find the tribot splash jar");
 	}
 
 	private class TribotProduct {
@@ -247,6 +452,79 @@ class TribotSplash {
 		}
 	}
 
+	private static class CachedRelease {
+
+		private final ProductFile file;
+		private final Optional<String> etag;
+		private final Optional<String> lastModified;
+		private final long expiresAt = System.currentTimeMillis() + RELEASE_TTL.toMillis();
+
+		private CachedRelease(ProductFile file, Optional<String> etag, Optional<String> lastModified) {
+			this.file = file;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		private ProductFile getFile() {
+			return this.file;
+		}
+
+		private Optional<String> getEtag() {
+			return this.etag;
+		}
+
+		private Optional<String> getLastModified() {
+			return this.lastModified;
+		}
+
+		private boolean isExpired() {
+			return System.currentTimeMillis() > expiresAt;
+		}
+
+	}
+
+	// The jar on a remote host, as last checked
+	private static class RemoteSplash {
+
+		// Guarded by this
+		private String path;
+		private String hash;
+		private long verifiedAt;
+
+		private boolean isVerified(String localHash) {
+			return path != null && localHash != null && localHash.equals(hash)
+			       && System.currentTimeMillis() < verifiedAt + REMOTE_VERIFY_INTERVAL.toMillis();
+		}
+
+		private void verified(String hash) {
+			this.hash = hash;
+			this.verifiedAt = System.currentTimeMillis();
+		}
+
+	}
+
+	private static class LocalHash {
+
+		private final long size;
+		private final long lastModified;
+		private final String hash;
+
+		private LocalHash(long size, long lastModified, String hash) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+
+		private boolean matches(long size, long lastModified) {
+			return this.size == size && this.lastModified == lastModified;
+		}
+
+		private String getHash() {
+			return this.hash;
+		}
+
+	}
+
 	// Decompiled from tribot
 	private static File getAppDataDirectory() {
 		File a = null;
@@ -279,32 +557,37 @@ class TribotSplash {
 	}
 
 	private static byte[] createChecksum(String filename) throws Exception {
-
-		final InputStream fis = new FileInputStream(filename);
-
-		final byte[] buffer = new byte[1024];
-		final MessageDigest complete = MessageDigest.getInstance("MD5");
-		int numRead;
-
-		do {
-			numRead = fis.read(buffer);
-			if (numRead > 0) {
-				complete.update(buffer, 0, numRead);
+		final MessageDigest complete = newMd5();
+		try (final FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				complete.update(buffer);
+				buffer.clear();
 			}
 		}
-		while (numRead != -1);
-
-		fis.close();
 		return complete.digest();
 	}
 
 	private static String getMD5Checksum(String filename) throws Exception {
-		final byte[] b = createChecksum(filename);
-		String result = "";
-		for (int i = 0; i < b.length; i++) {
-			result += Integer.toString((b[i] & 0xff) + 0x100, 16).substring(1);
+		return toHex(createChecksum(filename));
+	}
+
+	private static MessageDigest newMd5() throws IOException {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder result = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
 		}
-		return result;
+		return result.toString();
 	}
 
 }
@@ -0,0 +1,40 @@
+package org.tribot.automation;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.java_websocket.handshake.ClientHandshake;
+
+import java.util.Arrays;
+
+/**
+ * The encoding used for JSON-RPC frames on a connection. A connection only uses a binary format if the client asks
+ * for it with the {@value #HEADER} handshake header, which also tells us the client can read it. Anything else stays
+ * on json text frames.
+ */
+@RequiredArgsConstructor
+@Getter
+enum WireFormat {
+
+    JSON("json"),
+    // Binary frames
+    MESSAGE_PACK("msgpack");
+
+    static final String HEADER = "X-Automation-Format";
+    // Offers a format to a client on its connection url. Only a hint, the client still has to ask for it
+    static final String QUERY_PARAMETER = "format";
+
+    private final String name;
+
+    static WireFormat negotiate(ClientHandshake handshake) {
+        final String header = handshake.getFieldValue(HEADER);
+        return header != null ? forName(header.trim()) : JSON;
+    }
+
+    static WireFormat forName(String name) {
+        return Arrays.stream(values())
+                .filter(f -> f.name.equalsIgnoreCase(name))
+                .findFirst()
+                .orElse(JSON);
+    }
+
+}
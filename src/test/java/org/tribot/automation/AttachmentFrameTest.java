@@ -0,0 +1,102 @@
+package org.tribot.automation;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class AttachmentFrameTest {
+
+	@Test
+	public void roundTrips() {
+		final ByteBuffer frame = AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "request-1", wrap(1, 2, 3));
+		assertTrue(AttachmentFrame.isAttachment(frame));
+		final AttachmentFrame attachment = AttachmentFrame.read(frame);
+		assertEquals(AttachmentFrame.KIND_RESULT, attachment.getKind());
+		assertEquals("request-1", attachment.getId());
+		assertEquals(wrap(1, 2, 3), attachment.getPayload());
+	}
+
+	@Test
+	public void writesLayout() {
+		final ByteBuffer frame = AttachmentFrame.write(AttachmentFrame.KIND_SCREENSHOT_FRAME, "ab", wrap(9));
+		final byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		assertArrayEquals(new byte[]{AttachmentFrame.MARKER, AttachmentFrame.KIND_SCREENSHOT_FRAME, 2, 'a', 'b', 9},
+				bytes);
+	}
+
+	@Test
+	public void roundTripsUtf8IdAndEmptyPayload() {
+		final String id = "stream-\u00e9\u2713";
+		final AttachmentFrame attachment = AttachmentFrame.read(
+				AttachmentFrame.write(AttachmentFrame.KIND_RESULT, id, ByteBuffer.allocate(0)));
+		assertEquals(id, attachment.getId());
+		assertEquals(0, attachment.getPayload().remaining());
+	}
+
+	@Test
+	public void roundTripsLongestId() {
+		final String id = "a".repeat(255);
+		assertEquals(id, AttachmentFrame.read(AttachmentFrame.write(AttachmentFrame.KIND_RESULT, id, wrap(1))).getId());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsIdOverLengthByte() {
+		AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "a".repeat(256), wrap(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsIdOverLengthByteInUtf8() {
+		// 128 characters, but 256 bytes
+		AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "\u00e9".repeat(128), wrap(1));
+	}
+
+	@Test
+	public void writeLeavesPayloadUnread() {
+		final ByteBuffer payload = wrap(1, 2, 3);
+		payload.get();
+		final ByteBuffer frame = AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "1", payload);
+		assertEquals(1, payload.position());
+		assertEquals(wrap(2, 3), AttachmentFrame.read(frame).getPayload());
+	}
+
+	@Test
+	public void readSharesFrameBuffer() {
+		final ByteBuffer frame = AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "1", wrap(1, 2, 3));
+		final AttachmentFrame attachment = AttachmentFrame.read(frame);
+		// The frame itself isn't consumed, and the payload is a view of it
+		assertEquals(0, frame.position());
+		frame.put(frame.limit() - 1, (byte) 7);
+		assertEquals(7, attachment.getPayload().get(2));
+	}
+
+	@Test
+	public void readsFromFramePosition() {
+		final ByteBuffer frame = ByteBuffer.allocate(64);
+		frame.put((byte) 0x42);
+		frame.put(AttachmentFrame.write(AttachmentFrame.KIND_RESULT, "1", wrap(5)));
+		frame.flip().position(1);
+		assertTrue(AttachmentFrame.isAttachment(frame));
+		assertEquals(wrap(5), AttachmentFrame.read(frame).getPayload());
+	}
+
+	@Test
+	public void isNotAttachment() {
+		assertFalse(AttachmentFrame.isAttachment(ByteBuffer.allocate(0)));
+		// A MessagePack fixmap
+		assertFalse(AttachmentFrame.isAttachment(wrap(0x81, 0xa1, 'a', 1)));
+		assertFalse(AttachmentFrame.isAttachment(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8))));
+	}
+
+	private static ByteBuffer wrap(int... values) {
+		final byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+}
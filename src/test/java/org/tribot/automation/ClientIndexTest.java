@@ -0,0 +1,84 @@
+package org.tribot.automation;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ClientIndexTest {
+
+	private final ClientIndex index = new ClientIndex();
+
+	@Test
+	public void findsByAttribute() {
+		index.update("a", ClientIndex.Attribute.WORLD, 301);
+		index.update("b", ClientIndex.Attribute.WORLD, 302);
+		index.update("c", ClientIndex.Attribute.WORLD, 301);
+		assertEquals(Set.of("a", "c"), index.find(Map.of(ClientIndex.Attribute.WORLD, 301)));
+		assertEquals(Set.of(), index.find(Map.of(ClientIndex.Attribute.WORLD, 303)));
+	}
+
+	@Test
+	public void intersectsCriteria() {
+		index.update("a", ClientIndex.Attribute.SCRIPT_NAME, "nRestocker");
+		index.update("a", ClientIndex.Attribute.LOGGED_IN, true);
+		index.update("b", ClientIndex.Attribute.SCRIPT_NAME, "nRestocker");
+		index.update("b", ClientIndex.Attribute.LOGGED_IN, false);
+		index.update("c", ClientIndex.Attribute.LOGGED_IN, true);
+		final Map<ClientIndex.Attribute, Object> criteria = new EnumMap<>(ClientIndex.Attribute.class);
+		criteria.put(ClientIndex.Attribute.SCRIPT_NAME, "nRestocker");
+		criteria.put(ClientIndex.Attribute.LOGGED_IN, true);
+		assertEquals(Set.of("a"), index.find(criteria));
+		// A criterion nobody matches
+		criteria.put(ClientIndex.Attribute.WORLD, 301);
+		assertEquals(Set.of(), index.find(criteria));
+	}
+
+	@Test
+	public void updateMovesClient() {
+		index.update("a", ClientIndex.Attribute.WORLD, 301);
+		index.update("a", ClientIndex.Attribute.WORLD, 302);
+		assertEquals(Set.of(), index.find(Map.of(ClientIndex.Attribute.WORLD, 301)));
+		assertEquals(Set.of("a"), index.find(Map.of(ClientIndex.Attribute.WORLD, 302)));
+	}
+
+	@Test
+	public void unchangedUpdateKeepsClient() {
+		index.update("a", ClientIndex.Attribute.USERNAME, "Zezima");
+		index.update("a", ClientIndex.Attribute.USERNAME, "Zezima");
+		assertEquals(Set.of("a"), index.find(Map.of(ClientIndex.Attribute.USERNAME, "Zezima")));
+	}
+
+	@Test
+	public void nullValueRemovesFromIndex() {
+		index.update("a", ClientIndex.Attribute.SCRIPT_NAME, "nRestocker");
+		index.update("a", ClientIndex.Attribute.WORLD, 301);
+		index.update("a", ClientIndex.Attribute.SCRIPT_NAME, null);
+		assertEquals(Set.of(), index.find(Map.of(ClientIndex.Attribute.SCRIPT_NAME, "nRestocker")));
+		assertEquals(Set.of("a"), index.find(Map.of(ClientIndex.Attribute.WORLD, 301)));
+		// Unknown to unknown is a no-op
+		index.update("b", ClientIndex.Attribute.SCRIPT_NAME, null);
+	}
+
+	@Test
+	public void removeDropsClientFromEveryIndex() {
+		index.update("a", ClientIndex.Attribute.WORLD, 301);
+		index.update("a", ClientIndex.Attribute.LOGGED_IN, true);
+		index.update("b", ClientIndex.Attribute.WORLD, 301);
+		index.remove("a");
+		index.remove("unknown");
+		assertEquals(Set.of("b"), index.find(Map.of(ClientIndex.Attribute.WORLD, 301)));
+		assertEquals(Set.of(), index.find(Map.of(ClientIndex.Attribute.LOGGED_IN, true)));
+	}
+
+	@Test
+	public void resultIsACopy() {
+		index.update("a", ClientIndex.Attribute.WORLD, 301);
+		index.find(Map.of(ClientIndex.Attribute.WORLD, 301)).clear();
+		assertEquals(Set.of("a"), index.find(Map.of(ClientIndex.Attribute.WORLD, 301)));
+	}
+
+}
@@ -0,0 +1,117 @@
+package org.tribot.automation;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ClientStateCacheTest {
+
+	private static final Duration TTL = Duration.ofMinutes(1);
+
+	private final ClientStateCache cache = new ClientStateCache(StateCacheSettings.builder().build());
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	public void sharesRequestInFlight() {
+		final CompletableFuture<String> response = new CompletableFuture<>();
+		final CompletableFuture<String> first = cache.get("username", TTL, () -> load(response));
+		final CompletableFuture<String> second = cache.get("username", TTL, () -> load(response));
+		assertFalse(first.isDone());
+		response.complete("Zezima");
+		assertEquals("Zezima", first.join());
+		assertEquals("Zezima", second.join());
+		assertEquals(1, loads.get());
+		assertStats(1, 1);
+	}
+
+	@Test
+	public void cachesUntilTtlPasses() throws InterruptedException {
+		final Duration ttl = Duration.ofMillis(50);
+		assertEquals("a", cache.get("world", ttl, () -> load("a")).join());
+		assertEquals("a", cache.get("world", ttl, () -> load("b")).join());
+		Thread.sleep(100);
+		assertEquals("c", cache.get("world", ttl, () -> load("c")).join());
+		assertEquals(2, loads.get());
+		assertStats(1, 2);
+	}
+
+	@Test
+	public void zeroTtlIsNotCached() {
+		cache.get("tile", Duration.ZERO, () -> load("a")).join();
+		assertEquals("b", cache.get("tile", Duration.ZERO, () -> load("b")).join());
+		assertEquals(2, loads.get());
+		assertStats(0, 0);
+	}
+
+	@Test
+	public void keysAreSeparate() {
+		cache.get("varbit:1", TTL, () -> load(1)).join();
+		assertEquals(2, (int) cache.get("varbit:2", TTL, () -> load(2)).join());
+	}
+
+	@Test
+	public void failedReadsAreNotCached() {
+		final CompletableFuture<String> failed = cache.get("username", TTL,
+				() -> CompletableFuture.failedFuture(new AutomationException("Timed out")));
+		final CompletionException e = assertThrows(CompletionException.class, failed::join);
+		assertTrue(e.getCause() instanceof AutomationException);
+		assertEquals("a", cache.get("username", TTL, () -> load("a")).join());
+	}
+
+	@Test
+	public void throwingLoaderIsNotCached() {
+		assertThrows(IllegalStateException.class, () -> cache.get("username", TTL, () -> {
+			throw new IllegalStateException();
+		}));
+		assertEquals("a", cache.get("username", TTL, () -> load("a")).join());
+	}
+
+	@Test
+	public void invalidatesKey() {
+		cache.get("username", TTL, () -> load("a")).join();
+		cache.get("world", TTL, () -> load(1)).join();
+		cache.invalidate("username");
+		assertEquals("b", cache.get("username", TTL, () -> load("b")).join());
+		assertEquals(1, (int) cache.get("world", TTL, () -> load(2)).join());
+	}
+
+	@Test
+	public void invalidatesAll() {
+		cache.get("username", TTL, () -> load("a")).join();
+		cache.get("world", TTL, () -> load(1)).join();
+		cache.invalidate();
+		assertEquals("b", cache.get("username", TTL, () -> load("b")).join());
+		assertEquals(2, (int) cache.get("world", TTL, () -> load(2)).join());
+	}
+
+	@Test
+	public void cancellingOneReaderKeepsEntry() {
+		final CompletableFuture<String> response = new CompletableFuture<>();
+		cache.get("username", TTL, () -> load(response)).cancel(true);
+		final CompletableFuture<String> second = cache.get("username", TTL, () -> load("b"));
+		response.complete("a");
+		assertEquals("a", second.join());
+		assertEquals(1, loads.get());
+	}
+
+	private <T> CompletableFuture<T> load(T value) {
+		return load(CompletableFuture.completedFuture(value));
+	}
+
+	private <T> CompletableFuture<T> load(CompletableFuture<T> response) {
+		loads.incrementAndGet();
+		return response;
+	}
+
+	private void assertStats(long hits, long misses) {
+		final CacheStats stats = cache.getStats();
+		assertEquals(hits, stats.getHits());
+		assertEquals(misses, stats.getMisses());
+	}
+
+}
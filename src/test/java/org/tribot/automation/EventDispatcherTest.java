@@ -0,0 +1,190 @@
+package org.tribot.automation;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventDispatcherTest {
+
+	// Queued drains only run when the test says so, so queues fill up deterministically
+	private final ManualExecutor executor = new ManualExecutor();
+	private final List<String> handled = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void handlesEventsInOrder() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 16, EventOverflowPolicy.BLOCK);
+		dispatch(dispatcher, "client", "1", "2", "3");
+		// One drain per client, not per event
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2", "client:3"), handled);
+	}
+
+	@Test
+	public void drainsClientsSeparately() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 16, EventOverflowPolicy.BLOCK);
+		dispatch(dispatcher, "a", "1", "2");
+		dispatch(dispatcher, "b", "1");
+		assertEquals(2, executor.tasks.size());
+		executor.runAll();
+		assertEquals(List.of("a:1", "a:2", "b:1"), handled);
+	}
+
+	@Test
+	public void dropsOldestByDefault() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 2, null);
+		dispatch(dispatcher, "client", "1", "2", "3");
+		executor.runAll();
+		assertEquals(List.of("client:2", "client:3"), handled);
+	}
+
+	@Test
+	public void dropsNewest() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 2, EventOverflowPolicy.DROP_NEWEST);
+		dispatch(dispatcher, "client", "1", "2", "3");
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2"), handled);
+	}
+
+	@Test
+	public void neverDropsNewestUndroppable() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 2, EventOverflowPolicy.DROP_NEWEST);
+		dispatch(dispatcher, "client", "1", "2");
+		dispatchKept(dispatcher, "client", "exit");
+		dispatch(dispatcher, "client", "3");
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2", "client:exit"), handled);
+	}
+
+	@Test
+	public void dropsOldestDroppableOnly() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 2, EventOverflowPolicy.DROP_OLDEST);
+		dispatchKept(dispatcher, "client", "request");
+		dispatch(dispatcher, "client", "1", "2", "3");
+		executor.runAll();
+		assertEquals(List.of("client:request", "client:3"), handled);
+	}
+
+	@Test
+	public void queuesUndroppablePastCapacity() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 1, EventOverflowPolicy.DROP_OLDEST);
+		dispatchKept(dispatcher, "client", "request", "ban");
+		// Nothing queued may be dropped, so the new droppable event is
+		dispatch(dispatcher, "client", "1");
+		dispatchKept(dispatcher, "client", "exit");
+		executor.runAll();
+		assertEquals(List.of("client:request", "client:ban", "client:exit"), handled);
+	}
+
+	@Test
+	public void overflowOnlyAffectsFullClient() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 1, EventOverflowPolicy.DROP_NEWEST);
+		dispatch(dispatcher, "a", "1", "2");
+		dispatch(dispatcher, "b", "1");
+		executor.runAll();
+		assertEquals(List.of("a:1", "b:1"), handled);
+	}
+
+	@Test
+	public void blocksUntilListenersCatchUp() throws InterruptedException {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 1, EventOverflowPolicy.BLOCK);
+		dispatch(dispatcher, "client", "1");
+		final Thread reader = new Thread(() -> dispatch(dispatcher, "client", "2"));
+		reader.start();
+		awaitState(reader, Thread.State.WAITING);
+		executor.runAll();
+		reader.join(TimeUnit.SECONDS.toMillis(10));
+		assertFalse(reader.isAlive());
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2"), handled);
+	}
+
+	@Test
+	public void listenerCanRaiseEventsForOwnClientWhenFull() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 1, EventOverflowPolicy.BLOCK);
+		dispatcher.dispatch("client", true, () -> {
+			handled.add("client:1");
+			// Would wait on itself forever if the drainer blocked
+			dispatch(dispatcher, "client", "2", "3");
+		});
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2", "client:3"), handled);
+	}
+
+	@Test
+	public void failingListenerDoesNotStopQueue() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 16, EventOverflowPolicy.BLOCK);
+		dispatcher.dispatch("client", true, () -> {
+			throw new IllegalStateException("Listener failed");
+		});
+		dispatch(dispatcher, "client", "2");
+		executor.runAll();
+		assertEquals(List.of("client:2"), handled);
+	}
+
+	@Test
+	public void dropsEventsAfterExecutorShutDown() {
+		final EventDispatcher dispatcher = new EventDispatcher(command -> {
+			throw new RejectedExecutionException();
+		}, 16, EventOverflowPolicy.BLOCK);
+		dispatch(dispatcher, "client", "1", "2");
+		assertTrue(handled.isEmpty());
+	}
+
+	@Test
+	public void removedClientKeepsQueuedEvents() {
+		final EventDispatcher dispatcher = new EventDispatcher(executor, 16, EventOverflowPolicy.BLOCK);
+		dispatch(dispatcher, "client", "1");
+		dispatcher.remove("client");
+		dispatch(dispatcher, "client", "2");
+		executor.runAll();
+		assertEquals(List.of("client:1", "client:2"), handled);
+	}
+
+	private void dispatch(EventDispatcher dispatcher, String clientId, String... events) {
+		for (String event : events) {
+			dispatcher.dispatch(clientId, true, () -> handled.add(clientId + ":" + event));
+		}
+	}
+
+	private void dispatchKept(EventDispatcher dispatcher, String clientId, String... events) {
+		for (String event : events) {
+			dispatcher.dispatch(clientId, false, () -> handled.add(clientId + ":" + event));
+		}
+	}
+
+	private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (thread.getState() != state) {
+			assertTrue("Thread never reached " + state, System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	private static class ManualExecutor implements Executor {
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.tribot.automation;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class FileReadWriteLockTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path path;
+	private FileReadWriteLock lock;
+
+	@Before
+	public void setUp() {
+		path = folder.getRoot().toPath().resolve("test.lock");
+		lock = new FileReadWriteLock(path);
+	}
+
+	@Test
+	public void createsLockFile() throws IOException {
+		try (final FileReadWriteLock.Handle ignored = lock.read()) {
+			assertTrue(Files.exists(path));
+		}
+	}
+
+	@Test
+	public void readersShare() throws Exception {
+		try (final FileReadWriteLock.Handle ignored = lock.read()) {
+			// Another thread gets in while this one still reads
+			inOtherThread(lock::read).get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void writerWaitsForReaders() throws Exception {
+		final FileReadWriteLock.Handle read = lock.read();
+		final CompletableFuture<Void> write = inOtherThread(lock::write);
+		assertBlocked(write);
+		read.close();
+		write.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void readerWaitsForWriter() throws Exception {
+		final FileReadWriteLock.Handle write = lock.write();
+		final CompletableFuture<Void> read = inOtherThread(lock::read);
+		assertBlocked(read);
+		write.close();
+		read.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void holdsFileLockWhileHeld() throws IOException {
+		try (final FileReadWriteLock.Handle ignored = lock.write()) {
+			assertFileLocked();
+		}
+		assertFileUnlocked();
+		final FileReadWriteLock.Handle first = lock.read();
+		final FileReadWriteLock.Handle second = lock.read();
+		first.close();
+		// Still held by the second reader
+		assertFileLocked();
+		second.close();
+		assertFileUnlocked();
+	}
+
+	// Completes once the other thread acquired and released the lock, handles are released by their own thread
+	private static CompletableFuture<Void> inOtherThread(Acquire acquire) {
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+		final Thread thread = new Thread(() -> {
+			try (final FileReadWriteLock.Handle ignored = acquire.get()) {
+				result.complete(null);
+			}
+			catch (Exception e) {
+				result.completeExceptionally(e);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		return result;
+	}
+
+	private static void assertBlocked(CompletableFuture<?> acquire) throws InterruptedException,
+	                                                                       ExecutionException {
+		try {
+			acquire.get(200, TimeUnit.MILLISECONDS);
+			fail("Lock was acquired while it should be held");
+		}
+		catch (TimeoutException expected) {
+		}
+	}
+
+	// The JVM refuses a second lock on a file it already locked, so this tells whether the lock is held
+	private void assertFileLocked() throws IOException {
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			assertThrows(OverlappingFileLockException.class, channel::tryLock);
+		}
+	}
+
+	private void assertFileUnlocked() throws IOException {
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		     final FileLock fileLock = channel.tryLock()) {
+			assertNotNull(fileLock);
+		}
+	}
+
+	private interface Acquire {
+		FileReadWriteLock.Handle get() throws IOException;
+	}
+
+}
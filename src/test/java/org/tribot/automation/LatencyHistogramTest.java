@@ -0,0 +1,118 @@
+package org.tribot.automation;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void emptyIsZero() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(Duration.ZERO, histogram.getMean());
+		assertEquals(Duration.ZERO, histogram.getMax());
+		assertEquals(Duration.ZERO, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void recordsCountMeanAndMax() {
+		histogram.record(Duration.ofMillis(1));
+		histogram.record(Duration.ofMillis(3));
+		histogram.recordNanos(2_000_000);
+		assertEquals(3, histogram.getCount());
+		assertEquals(Duration.ofMillis(2), histogram.getMean());
+		assertEquals(Duration.ofMillis(3), histogram.getMax());
+	}
+
+	@Test
+	public void truncatesToMicros() {
+		histogram.recordNanos(1999);
+		assertEquals(Duration.ofNanos(1000), histogram.getMax());
+	}
+
+	@Test
+	public void recordsNegativeAsZero() {
+		histogram.recordNanos(-5000);
+		assertEquals(1, histogram.getCount());
+		assertEquals(Duration.ZERO, histogram.getMax());
+		assertEquals(Duration.ZERO, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void smallLatenciesAreExact() {
+		for (int micros = 1; micros <= 8; micros++) {
+			histogram.recordNanos(micros * 1000L);
+		}
+		assertEquals(micros(1), histogram.getPercentile(0));
+		assertEquals(micros(4), histogram.getPercentile(50));
+		assertEquals(micros(7), histogram.getPercentile(87.5));
+		assertEquals(micros(8), histogram.getPercentile(100));
+	}
+
+	@Test
+	public void percentilesAreWithinBucketWidth() {
+		for (long micros = 1; micros < 1L << 40; micros += Math.max(1, micros / 13)) {
+			assertBucketHolds(micros);
+			// Bucket boundaries
+			if (Long.bitCount(micros) == 1) {
+				assertBucketHolds(micros - 1);
+				assertBucketHolds(micros + 1);
+			}
+		}
+	}
+
+	@Test
+	public void clampsToMax() {
+		histogram.recordNanos(1_000_000_123);
+		// The bucket is wider, but nothing above the max was recorded
+		assertEquals(Duration.ofNanos(1_000_000_000), histogram.getPercentile(50));
+	}
+
+	@Test
+	public void recordsHugeLatenciesInLastBucket() {
+		final Duration huge = Duration.ofDays(30);
+		histogram.record(Duration.ofMillis(1));
+		histogram.record(huge);
+		histogram.record(huge.multipliedBy(2));
+		assertEquals(huge.multipliedBy(2), histogram.getPercentile(50));
+		assertEquals(huge.multipliedBy(2), histogram.getMax());
+	}
+
+	@Test
+	public void clampsPercentile() {
+		histogram.record(Duration.ofMillis(1));
+		histogram.record(Duration.ofMillis(5));
+		assertEquals(histogram.getPercentile(100), histogram.getPercentile(150));
+		assertEquals(histogram.getPercentile(0), histogram.getPercentile(-1));
+	}
+
+	@Test
+	public void copyIsIndependent() {
+		histogram.record(Duration.ofMillis(1));
+		final LatencyHistogram copy = histogram.copy();
+		histogram.record(Duration.ofMillis(100));
+		assertEquals(1, copy.getCount());
+		assertEquals(Duration.ofMillis(1), copy.getMax());
+		assertEquals(2, histogram.getCount());
+	}
+
+	// The percentile of a single latency is the top of its bucket, which is at most 12.5% above it
+	private static void assertBucketHolds(long micros) {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.recordNanos(micros * 1000);
+		// A larger latency so the result isn't clamped to the max
+		histogram.recordNanos((1L << 41) * 1000);
+		final long upper = histogram.getPercentile(50).toNanos() / 1000;
+		assertTrue(micros + " above its bucket " + upper, upper >= micros);
+		assertTrue(micros + " bucket too wide " + upper, upper <= micros + micros / 8);
+	}
+
+	private static Duration micros(long micros) {
+		return Duration.ofNanos(micros * 1000);
+	}
+
+}
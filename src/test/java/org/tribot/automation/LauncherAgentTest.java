@@ -0,0 +1,174 @@
+package org.tribot.automation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a launcher agent against a local automation server, without ssh. Launches go through {@code sh}, which
+ * prints its own pid the way the TRiBot launcher prints the client's.
+ */
+public class LauncherAgentTest {
+
+	private static final SshSettings SSH_SETTINGS = SshSettings.builder()
+	                                                           .username("user")
+	                                                           .host("launcher-agent-test")
+	                                                           .launcherAgent(true)
+	                                                           .build();
+	private static final String AGENT_ID = LauncherAgents.getAgentId(SSH_SETTINGS);
+
+	private AutomationServerImpl server;
+
+	@Before
+	public void setUp() throws Exception {
+		final int port;
+		try (final ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		server = AutomationServerImpl.builder().port(port).build();
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test
+	public void launchesAndReportsExit() throws Exception {
+		final LauncherAgent agent = connect(AGENT_ID, server.getLauncherAgents().newToken(AGENT_ID));
+		try {
+			awaitConnected(AGENT_ID);
+			final CompletableFuture<Void> exited = new CompletableFuture<>();
+			server.onEvent("client", ProcessExitEvent.class, e -> exited.complete(null));
+			// A connected agent is used as is, so the session pool is never needed
+			final long pid = server.getLauncherAgents().launch(SSH_SETTINGS, null, "client",
+					List.of("sh", "-c", "echo tribotpid:$$; sleep 0.2"), LaunchTimer.NONE);
+			assertTrue(pid > 0);
+			exited.get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			agent.close();
+		}
+	}
+
+	@Test
+	public void reportsFailedLaunch() throws Exception {
+		final LauncherAgent agent = connect(AGENT_ID, server.getLauncherAgents().newToken(AGENT_ID));
+		try {
+			awaitConnected(AGENT_ID);
+			server.getLauncherAgents().launch(SSH_SETTINGS, null, "client", List.of("sh", "-c", "exit 3"),
+					LaunchTimer.NONE);
+			fail("Launch without a pid succeeded");
+		}
+		catch (LaunchException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exited with 3"));
+		}
+		finally {
+			agent.close();
+		}
+	}
+
+	@Test
+	public void rejectsWrongToken() {
+		final String token = server.getLauncherAgents().newToken(AGENT_ID);
+		assertThrows(CompletionException.class, () -> connect(AGENT_ID, "wrong"));
+		// The rejected attempt neither took the agent's place nor used up its token
+		connect(AGENT_ID, token).close();
+	}
+
+	@Test
+	public void rejectsAgentThatWasNotStarted() {
+		assertThrows(CompletionException.class, () -> connect(AGENT_ID, "token"));
+	}
+
+	@Test
+	public void rejectsReusedToken() throws Exception {
+		final String token = server.getLauncherAgents().newToken(AGENT_ID);
+		final LauncherAgent agent = connect(AGENT_ID, token);
+		try {
+			awaitConnected(AGENT_ID);
+			assertThrows(CompletionException.class, () -> connect(AGENT_ID, token));
+		}
+		finally {
+			agent.close();
+		}
+	}
+
+	@Test
+	public void ignoresExitFromOtherAgent() throws Exception {
+		final SshSettings otherSettings = SshSettings.builder()
+		                                             .username("user")
+		                                             .host("other-host")
+		                                             .launcherAgent(true)
+		                                             .build();
+		final String otherId = LauncherAgents.getAgentId(otherSettings);
+		// Fails every launch, the answer can only be processed after the exit sent before it
+		final WebSocket other = HttpClient.newHttpClient()
+				.newWebSocketBuilder()
+				.header(LauncherAgent.TOKEN_HEADER, server.getLauncherAgents().newToken(otherId))
+				.buildAsync(getUri(otherId), new WebSocket.Listener() {
+					@Override
+					public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+						final List<String> fields = LauncherAgent.decode(data.toString());
+						if (fields.get(0).equals(LauncherAgent.LAUNCH)) {
+							webSocket.sendText(LauncherAgent.encode(List.of(LauncherAgent.FAILED, fields.get(1),
+									"refused")), true);
+						}
+						webSocket.request(1);
+						return null;
+					}
+				})
+				.join();
+		try {
+			final List<Class<?>> events = new CopyOnWriteArrayList<>();
+			final CompletableFuture<Void> handled = new CompletableFuture<>();
+			server.onEvent("client", ProcessExitEvent.class, e -> events.add(e.getClass()));
+			server.onEvent("client", ClientDisconnectedEvent.class, e -> handled.complete(null));
+			other.sendText(LauncherAgent.encode(List.of(LauncherAgent.EXITED, "client")), true).join();
+			awaitConnected(otherId);
+			final LaunchException e = assertThrows(LaunchException.class, () -> server.getLauncherAgents()
+					.launch(otherSettings, null, "other-client", List.of("true"), LaunchTimer.NONE));
+			assertEquals("refused", e.getMessage());
+			// Events of a client are handled in order, an accepted exit would come before this one
+			server.sendEvent("client", new ClientDisconnectedEvent());
+			handled.get(10, TimeUnit.SECONDS);
+			assertEquals(List.of(), events);
+		}
+		finally {
+			other.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+		}
+	}
+
+	private LauncherAgent connect(String agentId, String token) {
+		return LauncherAgent.connect(getUri(agentId), token);
+	}
+
+	private URI getUri(String agentId) {
+		return URI.create(server.getConnectionUrl(agentId, true, WireFormat.JSON));
+	}
+
+	// The agent sees the handshake finish slightly before the server registers it. Until then, a new token for the
+	// agent's id is still accepted, afterwards the connected agent keeps its place.
+	private void awaitConnected(String agentId) throws InterruptedException {
+		final LauncherAgents agents = server.getLauncherAgents();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (agents.accept(agentId, agents.newToken(agentId))) {
+			assertTrue("Agent did not connect", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+}
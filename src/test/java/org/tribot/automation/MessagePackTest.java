@@ -0,0 +1,157 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MessagePackTest {
+
+	@Test
+	public void roundTripsTree() {
+		final JsonElement tree = JsonParser.parseString("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":{\"items\":"
+		                                                + "[[995,1000],[-1,0]],\"ok\":true,\"none\":null,"
+		                                                + "\"ratio\":0.25,\"name\":\"Zezima\"}}");
+		assertEquals(tree, roundTrip(tree));
+	}
+
+	@Test
+	public void roundTripsIntegers() {
+		final long[] values = {0, 1, 127, 128, 255, 256, 65535, 65536, 0xffffffffL, 0x100000000L, Long.MAX_VALUE,
+				-1, -32, -33, -128, -129, -32768, -32769, Integer.MIN_VALUE, Integer.MIN_VALUE - 1L,
+				Long.MIN_VALUE};
+		for (long value : values) {
+			assertEquals(value, roundTrip(new JsonPrimitive(value)).getAsLong());
+		}
+	}
+
+	@Test
+	public void writesSmallestIntegerEncoding() {
+		assertEquals(1, MessagePack.encode(new JsonPrimitive(127)).length);
+		assertEquals(1, MessagePack.encode(new JsonPrimitive(-32)).length);
+		assertEquals(2, MessagePack.encode(new JsonPrimitive(255)).length);
+		assertEquals(2, MessagePack.encode(new JsonPrimitive(-128)).length);
+		assertEquals(3, MessagePack.encode(new JsonPrimitive(65535)).length);
+		assertEquals(5, MessagePack.encode(new JsonPrimitive(70000)).length);
+		assertEquals(9, MessagePack.encode(new JsonPrimitive(Long.MAX_VALUE)).length);
+		// Parsed json numbers are integers too when they are integral
+		assertEquals(1, MessagePack.encode(JsonParser.parseString("12")).length);
+		assertEquals(1, MessagePack.encode(new JsonPrimitive(2.0)).length);
+	}
+
+	@Test
+	public void roundTripsDoubles() {
+		assertEquals(9, MessagePack.encode(new JsonPrimitive(1.5)).length);
+		assertEquals(1.5, roundTrip(new JsonPrimitive(1.5)).getAsDouble(), 0);
+		assertEquals(-0.1, roundTrip(JsonParser.parseString("-0.1")).getAsDouble(), 0);
+	}
+
+	@Test
+	public void readsUnsigned64() {
+		final JsonElement value = decode(0xcf, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff);
+		assertEquals(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE), value.getAsBigInteger());
+	}
+
+	@Test
+	public void readsFloat32() {
+		assertEquals(1.5, decode(0xca, 0x3f, 0xc0, 0x00, 0x00).getAsDouble(), 0);
+	}
+
+	@Test
+	public void roundTripsStrings() {
+		for (int length : new int[]{0, 31, 32, 255, 256, 65535, 65536}) {
+			final String string = "a".repeat(length);
+			assertEquals(string, roundTrip(new JsonPrimitive(string)).getAsString());
+		}
+		final String unicode = "\u00dcn\u00efc\u00f8d\u00e9 \u2713";
+		assertEquals(unicode, roundTrip(new JsonPrimitive(unicode)).getAsString());
+		// str8 header
+		assertEquals(2 + 32, MessagePack.encode(new JsonPrimitive("a".repeat(32))).length);
+	}
+
+	@Test
+	public void roundTripsLargeContainers() {
+		final JsonArray array = new JsonArray();
+		for (int i = 0; i < 70000; i++) {
+			array.add(i % 100);
+		}
+		assertEquals(array, roundTrip(array));
+		final JsonArray small = new JsonArray();
+		for (int i = 0; i < 16; i++) {
+			small.add(i);
+		}
+		// array16 header
+		assertEquals(3 + 16, MessagePack.encode(small).length);
+	}
+
+	@Test
+	public void readsBinaryAsBase64() {
+		assertEquals("AQID", decode(0xc4, 0x03, 0x01, 0x02, 0x03).getAsString());
+		assertEquals("", decode(0xc4, 0x00).getAsString());
+		assertEquals("AQ==", decode(0xc5, 0x00, 0x01, 0x01).getAsString());
+	}
+
+	@Test
+	public void readsBinaryFromReadOnlyBuffer() {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes(0x92, 0xc4, 0x02, 0xff, 0xfe, 0x07)).asReadOnlyBuffer();
+		assertEquals(JsonParser.parseString("[\"//4=\",7]"), MessagePack.decode(buffer));
+	}
+
+	@Test
+	public void skipsExtensions() {
+		// fixext1, ext8 with a 2 byte payload, then a regular value
+		assertEquals(JsonParser.parseString("[null,null,5]"),
+				decode(0x93, 0xd4, 0x01, 0xaa, 0xc7, 0x02, 0x01, 0xaa, 0xbb, 0x05));
+		assertEquals(JsonNull.INSTANCE, decode(0xd8, 0x01, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+	}
+
+	@Test
+	public void readsNonStringMapKeys() {
+		assertEquals(JsonParser.parseString("{\"1\":true,\"null\":false}"), decode(0x82, 0x01, 0xc3, 0xc0, 0xc2));
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void rejectsTruncatedFrame() {
+		decode(0x92, 0x01);
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void rejectsTruncatedString() {
+		decode(0xa5, 'a', 'b');
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void rejectsTruncatedBinary() {
+		decode(0xc6, 0x7f, 0xff, 0xff, 0xff, 0x00);
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void rejectsUnknownMarker() {
+		decode(0xc1);
+	}
+
+	private static JsonElement roundTrip(JsonElement element) {
+		return MessagePack.decode(ByteBuffer.wrap(MessagePack.encode(element)));
+	}
+
+	private static JsonElement decode(int... bytes) {
+		return MessagePack.decode(ByteBuffer.wrap(bytes(bytes)));
+	}
+
+	private static byte[] bytes(int... values) {
+		final byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,102 @@
+package org.tribot.automation;
+
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RpcMessageReaderTest {
+
+	@Test
+	public void readsSingleResponse() throws IOException {
+		final List<RpcMessage> messages = read("{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"result\":{\"world\":301}}", "1");
+		assertEquals(1, messages.size());
+		final RpcMessage message = messages.get(0);
+		assertEquals("1", message.getId());
+		assertFalse(message.isRequest());
+		assertEquals(301, message.getResult().getAsJsonObject().get("world").getAsInt());
+		assertNull(message.getError());
+	}
+
+	@Test
+	public void readsRequest() throws IOException {
+		final RpcMessage message = read("{\"id\":7,\"method\":\"onEvent\",\"params\":[\"a\",2]}").get(0);
+		assertTrue(message.isRequest());
+		// Numeric ids are kept as strings
+		assertEquals("7", message.getId());
+		assertEquals("onEvent", message.getMethod());
+		assertEquals(JsonParser.parseString("[\"a\",2]"), message.getParams());
+	}
+
+	@Test
+	public void readsNotificationWithoutId() throws IOException {
+		final RpcMessage message = read("{\"method\":\"onEvent\",\"id\":null}").get(0);
+		assertNull(message.getId());
+		assertTrue(message.isRequest());
+	}
+
+	@Test
+	public void readsBatchInOrder() throws IOException {
+		final List<RpcMessage> messages = read("[{\"id\":\"1\",\"result\":1},4,{\"id\":\"2\",\"result\":2},"
+		                                       + "{\"id\":\"3\",\"error\":{\"code\":-1,\"message\":\"no\"}}]",
+				"1", "2", "3");
+		assertEquals(3, messages.size());
+		assertEquals("1", messages.get(0).getId());
+		assertEquals(1, messages.get(0).getResult().getAsInt());
+		assertEquals("2", messages.get(1).getId());
+		assertEquals(2, messages.get(1).getResult().getAsInt());
+		assertEquals("no", messages.get(2).getError().get("message").getAsString());
+	}
+
+	@Test
+	public void skipsResultsNobodyIsWaitingFor() throws IOException {
+		final List<RpcMessage> messages = read("[{\"id\":\"1\",\"result\":{\"big\":[1,2,3]}},"
+		                                       + "{\"id\":\"2\",\"result\":{\"big\":[4,5,6]}}]", "2");
+		assertEquals(2, messages.size());
+		assertEquals("1", messages.get(0).getId());
+		assertNull(messages.get(0).getResult());
+		assertNotNull(messages.get(1).getResult());
+	}
+
+	@Test
+	public void keepsResultWrittenBeforeId() throws IOException {
+		// The id isn't known yet when the result is read, so it can't be skipped
+		final RpcMessage message = read("{\"result\":5,\"id\":\"1\"}").get(0);
+		assertEquals("1", message.getId());
+		assertEquals(5, message.getResult().getAsInt());
+	}
+
+	@Test
+	public void ignoresUnknownFields() throws IOException {
+		final RpcMessage message = read("{\"extra\":{\"nested\":[1]},\"id\":\"1\",\"result\":true}", "1").get(0);
+		assertTrue(message.getResult().getAsBoolean());
+	}
+
+	@Test
+	public void readsDecodedTree() {
+		final List<RpcMessage> messages = new ArrayList<>();
+		RpcMessageReader.read(JsonParser.parseString("[{\"id\":\"1\",\"result\":1},\"x\",{\"method\":\"m\"}]"),
+				messages::add);
+		assertEquals(2, messages.size());
+		assertEquals(1, messages.get(0).getResult().getAsInt());
+		assertEquals("m", messages.get(1).getMethod());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsInvalidJson() throws IOException {
+		read("{\"id\":");
+	}
+
+	private static List<RpcMessage> read(String frame, String... pendingIds) throws IOException {
+		final Set<String> pending = Set.of(pendingIds);
+		final List<RpcMessage> messages = new ArrayList<>();
+		RpcMessageReader.read(frame, pending::contains, messages::add);
+		return messages;
+	}
+
+}